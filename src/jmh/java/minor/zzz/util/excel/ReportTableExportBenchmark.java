@@ -0,0 +1,159 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.ExcelType;
+import minor.zzz.util.excel.ReportTable.Head;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 导出吞吐量. rows计数器为每秒导出的行数;
+ * 每行分配字节数 = gc profiler的gc.alloc.rate.norm / rows参数.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReportTableExportBenchmark {
+
+    public enum Format {
+        XLS, XLSX, CSV, HTML
+    }
+
+    @Param({"1000", "60000"})
+    private int rows;
+
+    @Param({"4", "16"})
+    private int columns;
+
+    @Param({"1", "3"})
+    private int headDepth;
+
+    @Param({"0", "2"})
+    private int groupFields;
+
+    @Param({"XLS", "XLSX", "CSV", "HTML"})
+    private Format format;
+
+    private ReportTable table;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long rows;
+    }
+
+    // 丢弃输出, 只计算导出本身的开销
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+
+    private static DataType dataType(int column) {
+        switch (column % 4) {
+            case 0:
+                return DataType.INTEGER;
+            case 1:
+                return DataType.STRING;
+            case 2:
+                return DataType.DOUBLE;
+            default:
+                return DataType.DATE;
+        }
+    }
+
+    // 叶子列按headDepth - 1层表头分组, 每组两列
+    private List<Head> head() {
+        List<Head> level = new ArrayList<>();
+        for (int c = 0; c < columns; c++) {
+            level.add(new Head("f" + c, "列" + c, dataType(c)));
+        }
+
+        for (int d = 1; d < headDepth; d++) {
+            List<Head> parents = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += 2) {
+                Head parent = new Head("g" + d + "_" + i, "分组" + d + "_" + i);
+                parent.addChild(level.get(i));
+                if (i + 1 < level.size()) {
+                    parent.addChild(level.get(i + 1));
+                }
+                parents.add(parent);
+            }
+            level = parents;
+        }
+
+        return level;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        table = new ReportTable();
+        table.setHead(head());
+
+        // 分组列为前几个INTEGER/STRING列, 基数依次增大
+        List<String> groupField = new ArrayList<>();
+        for (int g = 0; g < groupFields; g++) {
+            groupField.add("f" + g);
+        }
+        table.setGroupField(groupField);
+
+        ColumnarData data = new ColumnarData(table.getHead(), rows);
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < rows; i++) {
+            int row = data.addRow();
+            for (int c = 0; c < columns; c++) {
+                switch (dataType(c)) {
+                    case INTEGER:
+                        data.setLong(row, c, c == 0 ? i / 100 : random.nextInt(1000));
+                        break;
+                    case STRING:
+                        data.setString(row, c, c == 1 ? "组" + i / 10 : "值" + random.nextInt(500));
+                        break;
+                    case DOUBLE:
+                        data.setDouble(row, c, random.nextDouble() * 10000);
+                        break;
+                    default:
+                        data.setDate(row, c, now - random.nextInt(3650) * 86400000L);
+                }
+            }
+        }
+        table.setData(data);
+
+        table.setSheetParallelism(1);
+        if (format == Format.XLSX) {
+            table.setExcelType(ExcelType.XLSX);
+        }
+    }
+
+    @Benchmark
+    public void export(Counters counters) throws IOException {
+        OutputStream out = new NullOutputStream();
+
+        switch (format) {
+            case CSV:
+                table.exportCsv(out);
+                break;
+            case HTML:
+                table.exportHtml(out);
+                break;
+            default:
+                table.exportExcel(out);
+        }
+
+        counters.rows += rows;
+    }
+}
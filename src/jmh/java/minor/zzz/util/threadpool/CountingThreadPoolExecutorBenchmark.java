@@ -0,0 +1,104 @@
+package minor.zzz.util.threadpool;
+
+import minor.zzz.util.threadpool.support.CountLatch;
+import minor.zzz.util.threadpool.support.StripedCountLatch;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 递归派生任务的吞吐量. 每次操作从一个根任务开始, 每个任务派生fanOut个子任务直到depth层,
+ * 再等待计数归零; tasks计数器为每秒完成的任务数.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CountingThreadPoolExecutorBenchmark {
+
+    public enum Latch {
+        AQS, STRIPED
+    }
+
+    @Param({"1", "2", "4", "8", "16", "32", "64"})
+    private int threads;
+
+    @Param({"AQS", "STRIPED"})
+    private Latch latch;
+
+    @Param({"2", "8"})
+    private int fanOut;
+
+    @Param({"0", "100"})
+    private int work;                   // 每个任务消耗的Blackhole.consumeCPU令牌数
+
+    @Param({"false"})
+    private boolean metrics;            // 是否开启任务统计, -p metrics=false,true比较统计的开销
+
+    private static final int TASKS = 10000;
+
+    private int depth;
+    private long tasksPerOperation;
+    private CountingThreadPoolExecutor executor;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long tasks;
+    }
+
+    private final class Spawn implements Runnable {
+        private final int level;
+
+        private Spawn(int level) {
+            this.level = level;
+        }
+
+        @Override
+        public void run() {
+            if (level < depth) {
+                for (int i = 0; i < fanOut; i++) {
+                    executor.execute(new Spawn(level + 1));
+                }
+            }
+
+            Blackhole.consumeCPU(work);
+        }
+    }
+
+    // 树的层数取使任务总数不少于TASKS的最小值
+    @Setup(Level.Trial)
+    public void setUp() {
+        long width = 1;
+        tasksPerOperation = 1;
+        depth = 0;
+        while (tasksPerOperation < TASKS) {
+            width *= fanOut;
+            tasksPerOperation += width;
+            depth++;
+        }
+
+        CountLatch numRunningTasks = latch == Latch.STRIPED ? new StripedCountLatch() : new CountLatch(0);
+        executor = new CountingThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                numRunningTasks);
+        executor.getMetrics().setEnabled(metrics);
+        executor.prestartAllCoreThreads();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.awaitShutdown();
+    }
+
+    @Benchmark
+    public void recursiveFanOut(Counters counters) throws InterruptedException {
+        executor.execute(new Spawn(0));
+        executor.awaitCompletion();
+
+        counters.tasks += tasksPerOperation;
+    }
+}
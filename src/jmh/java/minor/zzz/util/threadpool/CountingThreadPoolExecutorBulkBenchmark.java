@@ -0,0 +1,82 @@
+package minor.zzz.util.threadpool;
+
+import minor.zzz.util.threadpool.support.CountLatch;
+import minor.zzz.util.threadpool.support.StripedCountLatch;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次提交batch个任务再等待计数归零, 比较逐个execute与executeAll的吞吐量; tasks计数器为每秒完成的任务数.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CountingThreadPoolExecutorBulkBenchmark {
+
+    @Param({"1", "4", "16"})
+    private int threads;
+
+    @Param({"AQS", "STRIPED"})
+    private CountingThreadPoolExecutorBenchmark.Latch latch;
+
+    @Param({"100", "10000"})
+    private int batch;
+
+    @Param({"0", "100"})
+    private int work;                   // 每个任务消耗的Blackhole.consumeCPU令牌数
+
+    private CountingThreadPoolExecutor executor;
+    private List<Runnable> tasks;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long tasks;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CountLatch numRunningTasks = latch == CountingThreadPoolExecutorBenchmark.Latch.STRIPED
+                ? new StripedCountLatch() : new CountLatch(0);
+        executor = new CountingThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                numRunningTasks);
+        executor.prestartAllCoreThreads();
+
+        Runnable task = () -> Blackhole.consumeCPU(work);
+        tasks = new ArrayList<>(batch);
+        for (int i = 0; i < batch; i++) {
+            tasks.add(task);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.awaitShutdown();
+    }
+
+    @Benchmark
+    public void executeLoop(Counters counters) throws InterruptedException {
+        for (Runnable task : tasks) {
+            executor.execute(task);
+        }
+        executor.awaitCompletion();
+
+        counters.tasks += batch;
+    }
+
+    @Benchmark
+    public void executeAll(Counters counters) throws InterruptedException {
+        executor.executeAll(tasks);
+        executor.awaitCompletion();
+
+        counters.tasks += batch;
+    }
+}
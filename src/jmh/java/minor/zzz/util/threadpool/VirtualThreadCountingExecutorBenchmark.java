@@ -0,0 +1,104 @@
+package minor.zzz.util.threadpool;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 阻塞任务的吞吐量. 每次操作从一个根任务开始, 每个任务派生fanOut个子任务直到depth层, 每个任务阻塞blockMicros微秒,
+ * 模拟读数据库或写文件; tasks计数器为每秒完成的任务数.
+ * PLATFORM为limit个平台线程的CountingThreadPoolExecutor, VIRTUAL为同时最多执行limit个任务的虚拟线程,
+ * 须在Java 21上运行, 低版本时VIRTUAL退化为limit个平台线程
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VirtualThreadCountingExecutorBenchmark {
+
+    public enum ThreadKind {
+        PLATFORM, VIRTUAL
+    }
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    private ThreadKind kind;
+
+    @Param({"16", "64", "1000"})
+    private int limit;                  // PLATFORM的线程数, VIRTUAL的最大并发任务数
+
+    @Param({"8"})
+    private int fanOut;
+
+    @Param({"1000"})
+    private int blockMicros;
+
+    private static final int TASKS = 10000;
+
+    private int depth;
+    private long tasksPerOperation;
+    private CountingExecutor executor;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long tasks;
+    }
+
+    private final class Spawn implements Runnable {
+        private final int level;
+
+        private Spawn(int level) {
+            this.level = level;
+        }
+
+        @Override
+        public void run() {
+            if (level < depth) {
+                for (int i = 0; i < fanOut; i++) {
+                    executor.execute(new Spawn(level + 1));
+                }
+            }
+
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(blockMicros));
+        }
+    }
+
+    // 树的层数取使任务总数不少于TASKS的最小值
+    @Setup(Level.Trial)
+    public void setUp() {
+        long width = 1;
+        tasksPerOperation = 1;
+        depth = 0;
+        while (tasksPerOperation < TASKS) {
+            width *= fanOut;
+            tasksPerOperation += width;
+            depth++;
+        }
+
+        if (kind == ThreadKind.VIRTUAL) {
+            executor = new VirtualThreadCountingExecutor(limit);
+        } else {
+            CountingThreadPoolExecutor pool = new CountingThreadPoolExecutor(limit, limit, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            pool.prestartAllCoreThreads();
+            executor = pool;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.awaitShutdown();
+    }
+
+    @Benchmark
+    public void blockingFanOut(Counters counters) throws InterruptedException {
+        executor.execute(new Spawn(0));
+        executor.awaitCompletion();
+
+        counters.tasks += tasksPerOperation;
+    }
+}
@@ -0,0 +1,51 @@
+package minor.zzz.util.threadpool.support;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 计数本身的竞争开销: 所有线程在同一个计数上成对增减, 每次操作为一次increment + decrement.
+ * 默认线程数为CPU数, 可用 -t 指定, 如 gradle jmh -PjmhArgs="CountLatchBenchmark -t 64"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class CountLatchBenchmark {
+
+    public enum Latch {
+        AQS, STRIPED
+    }
+
+    @Param({"AQS", "STRIPED"})
+    private Latch latch;
+
+    private CountLatch counter;
+
+    // 每个线程的任务对象, 作为increment(key)/decrement(key)的key
+    @State(Scope.Thread)
+    public static class Task {
+        final Object key = new Object();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        counter = latch == Latch.STRIPED ? new StripedCountLatch() : new CountLatch(0);
+    }
+
+    @Benchmark
+    public void pairedByKey(Task task) {
+        counter.increment(task.key);
+        counter.decrement(task.key);
+    }
+
+    @Benchmark
+    public void pairedByThread() {
+        counter.increment();
+        counter.decrement();
+    }
+}
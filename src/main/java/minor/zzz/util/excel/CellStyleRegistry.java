@@ -0,0 +1,155 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.DataType;
+import org.apache.poi.ss.usermodel.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 一个工作簿内的单元格样式缓存.
+ *
+ * 样式按(用途, 数据类型, 格式)创建一次后复用, 样式数量只与表头的格式种类有关, 与行数无关,
+ * 不会超出HSSF每个工作簿4000个样式的限制.
+ */
+class CellStyleRegistry {
+
+    static final String DEFAULT_DATE_FORMAT = "yyyy-mm-dd";
+
+    enum Role {
+        HEAD,           // 表头
+        BODY,           // 普通数据单元格
+        GROUP,          // 合并的分组单元格
+        TOTAL           // 小计、合计行
+    }
+
+    private static final class Key {
+        private final Role role;
+        private final DataType dataType;
+        private final String format;
+
+        private Key(Role role, DataType dataType, String format) {
+            this.role = role;
+            this.dataType = dataType;
+            this.format = format;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            if (role != key.role) return false;
+            if (dataType != key.dataType) return false;
+            return format == null ? key.format == null : format.equals(key.format);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = role.hashCode();
+            result = 31 * result + (dataType == null ? 0 : dataType.hashCode());
+            result = 31 * result + (format == null ? 0 : format.hashCode());
+            return result;
+        }
+    }
+
+    private final Workbook excel;
+    private final Map<Key, CellStyle> styles = new HashMap<>();
+    private DataFormat dataFormat;
+    private Font boldFont;
+
+    CellStyleRegistry(Workbook excel) {
+        this.excel = excel;
+    }
+
+    // 未指定格式时使用的格式, 为null时使用excel的常规格式
+    static String defaultFormat(DataType dataType) {
+        return dataType == DataType.DATE ? DEFAULT_DATE_FORMAT : null;
+    }
+
+    CellStyle head() {
+        return style(Role.HEAD, null, null);
+    }
+
+    /**
+     * 数据单元格的样式; 普通单元格没有格式时返回null, 即不设置样式
+     *
+     * @param format excel格式, 为null时使用数据类型的默认格式
+     */
+    CellStyle body(DataType dataType, String format, boolean group) {
+        if (format == null) {
+            format = defaultFormat(dataType);
+        }
+
+        if (!group && format == null) {
+            return null;
+        }
+
+        return style(group ? Role.GROUP : Role.BODY, dataType, format);
+    }
+
+    /**
+     * 小计、合计行的样式(粗体)
+     *
+     * @param format excel格式, 为null时使用数据类型的默认格式
+     */
+    CellStyle total(DataType dataType, String format) {
+        return style(Role.TOTAL, dataType, format == null ? defaultFormat(dataType) : format);
+    }
+
+    // 已创建的样式数
+    int size() {
+        return styles.size();
+    }
+
+    private CellStyle style(Role role, DataType dataType, String format) {
+        Key key = new Key(role, dataType, format);
+
+        CellStyle style = styles.get(key);
+        if (style == null) {
+            style = create(role, format);
+            styles.put(key, style);
+        }
+
+        return style;
+    }
+
+    private Font boldFont() {
+        if (boldFont == null) {
+            boldFont = excel.createFont();
+            boldFont.setBoldweight(Font.BOLDWEIGHT_BOLD);//粗体显示
+        }
+
+        return boldFont;
+    }
+
+    private CellStyle create(Role role, String format) {
+        CellStyle style = excel.createCellStyle();
+
+        switch (role) {
+            case HEAD:
+                style.setAlignment(CellStyle.ALIGN_CENTER);
+                style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
+                style.setFont(boldFont());
+                break;
+            case TOTAL:
+                style.setFont(boldFont());
+                break;
+            case GROUP:
+                style.setVerticalAlignment(CellStyle.VERTICAL_CENTER);     // 合并后的分组值显示在中间
+                break;
+            default:
+        }
+
+        if (format != null) {
+            if (dataFormat == null) {
+                dataFormat = excel.createDataFormat();
+            }
+            style.setDataFormat(dataFormat.getFormat(format));
+        }
+
+        return style;
+    }
+}
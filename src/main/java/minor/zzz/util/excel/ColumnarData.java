@@ -0,0 +1,635 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+
+import java.util.*;
+
+/**
+ * 按列存储的报表数据, 列由叶子表头生成.
+ *
+ * INTEGER、DATE列保存为long数组(DATE为毫秒时间戳), DOUBLE列保存为double数组,
+ * STRING列保存为字典编码后的int数组, 读写单元格时不装箱也不做字符串转换.
+ * STRING列的值按String.valueOf保存, 分组排序按String.compareTo; 需按数值或日期排序的列应使用对应的表头类型.
+ *
+ * 非线程安全
+ */
+public class ColumnarData implements RowStore {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private abstract static class Col {
+        final String field;
+        final DataType dataType;
+        final BitSet present = new BitSet();                // 有值的行
+
+        Col(String field, DataType dataType) {
+            this.field = field;
+            this.dataType = dataType;
+        }
+
+        abstract void ensureCapacity(int capacity);
+
+        void clear() {
+            present.clear();
+        }
+
+        void setLong(int row, long value) {
+            throw new IllegalArgumentException("column " + field + " is " + dataType + ", not INTEGER/DATE");
+        }
+
+        void setDouble(int row, double value) {
+            throw new IllegalArgumentException("column " + field + " is " + dataType + ", not DOUBLE");
+        }
+
+        void setString(int row, String value) {
+            throw new IllegalArgumentException("column " + field + " is " + dataType + ", not STRING");
+        }
+
+        long getLong(int row) {
+            throw new IllegalArgumentException("column " + field + " is " + dataType + ", not INTEGER/DATE");
+        }
+
+        double getDouble(int row) {
+            throw new IllegalArgumentException("column " + field + " is " + dataType + ", not DOUBLE");
+        }
+
+        String getString(int row) {
+            throw new IllegalArgumentException("column " + field + " is " + dataType + ", not STRING");
+        }
+
+        abstract void setValue(int row, Object value);
+
+        abstract Object getValue(int row);
+
+        // 两行的值均非空
+        abstract boolean valueEquals(int row1, int row2);
+
+        abstract int valueCompare(int row1, int row2);
+
+        // 计算前size行的排名(0表示空值), 返回排名种类数
+        abstract int rank(int size, int[] ranks);
+    }
+
+    private static final class LongCol extends Col {
+        long[] values;
+
+        LongCol(String field, DataType dataType, int capacity) {
+            super(field, dataType);
+            this.values = new long[capacity];
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void setLong(int row, long value) {
+            values[row] = value;
+            present.set(row);
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            if (value instanceof Number) {
+                setLong(row, ((Number) value).longValue());
+            } else if (value instanceof Date) {
+                setLong(row, ((Date) value).getTime());
+            } else if (value instanceof Calendar) {
+                setLong(row, ((Calendar) value).getTimeInMillis());
+            } else if (value instanceof String && dataType == DataType.INTEGER) {
+                setLong(row, Long.parseLong((String) value));
+            } else {
+                throw new IllegalArgumentException("column " + field + " is " + dataType + ", can not accept " + value.getClass().getName());
+            }
+        }
+
+        @Override
+        Object getValue(int row) {
+            return dataType == DataType.DATE ? new Date(values[row]) : (Object) values[row];
+        }
+
+        @Override
+        boolean valueEquals(int row1, int row2) {
+            return values[row1] == values[row2];
+        }
+
+        @Override
+        int valueCompare(int row1, int row2) {
+            return Long.compare(values[row1], values[row2]);
+        }
+
+        @Override
+        int rank(int size, int[] ranks) {
+            return GroupKeySorter.rankLongs(values, present, size, ranks);
+        }
+    }
+
+    private static final class DoubleCol extends Col {
+        double[] values;
+
+        DoubleCol(String field, int capacity) {
+            super(field, DataType.DOUBLE);
+            this.values = new double[capacity];
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void setDouble(int row, double value) {
+            values[row] = value;
+            present.set(row);
+        }
+
+        @Override
+        void setLong(int row, long value) {
+            setDouble(row, value);
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            if (value instanceof Number) {
+                setDouble(row, ((Number) value).doubleValue());
+            } else if (value instanceof String) {
+                setDouble(row, Double.parseDouble((String) value));
+            } else {
+                throw new IllegalArgumentException("column " + field + " is DOUBLE, can not accept " + value.getClass().getName());
+            }
+        }
+
+        @Override
+        Object getValue(int row) {
+            return values[row];
+        }
+
+        @Override
+        boolean valueEquals(int row1, int row2) {
+            return Double.doubleToLongBits(values[row1]) == Double.doubleToLongBits(values[row2]);
+        }
+
+        @Override
+        int valueCompare(int row1, int row2) {
+            return Double.compare(values[row1], values[row2]);
+        }
+
+        @Override
+        int rank(int size, int[] ranks) {
+            return GroupKeySorter.rankDoubles(values, present, size, ranks);
+        }
+    }
+
+    private static final class StringCol extends Col {
+        int[] codes;
+        final List<String> dictionary = new ArrayList<>();            // 编码 -> 字符串
+        final Map<String, Integer> codeOf = new HashMap<>();           // 字符串 -> 编码
+
+        StringCol(String field, int capacity) {
+            super(field, DataType.STRING);
+            this.codes = new int[capacity];
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            codes = Arrays.copyOf(codes, capacity);
+        }
+
+        @Override
+        void clear() {
+            super.clear();
+            dictionary.clear();
+            codeOf.clear();
+        }
+
+        @Override
+        void setString(int row, String value) {
+            if (value == null) {
+                present.clear(row);
+                return;
+            }
+
+            Integer code = codeOf.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                codeOf.put(value, code);
+            }
+
+            codes[row] = code;
+            present.set(row);
+        }
+
+        @Override
+        String getString(int row) {
+            return dictionary.get(codes[row]);
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            setString(row, String.valueOf(value));
+        }
+
+        @Override
+        Object getValue(int row) {
+            return getString(row);
+        }
+
+        @Override
+        boolean valueEquals(int row1, int row2) {
+            return codes[row1] == codes[row2];
+        }
+
+        @Override
+        int valueCompare(int row1, int row2) {
+            return codes[row1] == codes[row2] ? 0 : getString(row1).compareTo(getString(row2));
+        }
+
+        @Override
+        int rank(int size, int[] ranks) {
+            // 字典中的字符串互不相同, 排序字典即得到每个编码的排名
+            Integer[] sorted = new Integer[dictionary.size()];
+            for (int code = 0; code < sorted.length; code++) {
+                sorted[code] = code;
+            }
+            Arrays.parallelSort(sorted, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer code1, Integer code2) {
+                    return dictionary.get(code1).compareTo(dictionary.get(code2));
+                }
+            });
+
+            int[] rankOf = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                rankOf[sorted[i]] = i + 1;
+            }
+
+            for (int row = 0; row < size; row++) {
+                ranks[row] = present.get(row) ? rankOf[codes[row]] : 0;
+            }
+
+            return sorted.length + 1;
+        }
+    }
+
+    private final Col[] columns;
+    private final Map<String, Integer> field2index = new HashMap<>();
+    private int size = 0;
+    private int modCount = 0;
+    private int capacity;
+
+    public ColumnarData(List<Head> head) {
+        this(head, DEFAULT_CAPACITY);
+    }
+
+    public ColumnarData(List<Head> head, int expectedRows) {
+        this(leafFields(head), leafDataTypes(head), expectedRows);
+    }
+
+    // 列与游标的列一致, 用于缓存游标读出的行
+    ColumnarData(RowCursor schema, int expectedRows) {
+        this(fieldsOf(schema), dataTypesOf(schema), expectedRows);
+    }
+
+    private ColumnarData(String[] fields, DataType[] dataTypes, int expectedRows) {
+        this.capacity = Math.max(expectedRows, DEFAULT_CAPACITY);
+        this.columns = new Col[fields.length];
+
+        for (int i = 0; i < fields.length; i++) {
+            switch (dataTypes[i]) {
+                case INTEGER:
+                case DATE:
+                    columns[i] = new LongCol(fields[i], dataTypes[i], capacity);
+                    break;
+                case DOUBLE:
+                    columns[i] = new DoubleCol(fields[i], capacity);
+                    break;
+                default:
+                    columns[i] = new StringCol(fields[i], capacity);
+            }
+
+            field2index.put(fields[i], i);
+        }
+    }
+
+    private static List<Head> leaves(List<Head> head) {
+        List<Head> leaves = new ArrayList<>();
+        for (Head h : head) {
+            h.collectLeaves(leaves);
+        }
+
+        return leaves;
+    }
+
+    private static String[] leafFields(List<Head> head) {
+        List<Head> leaves = leaves(head);
+        String[] fields = new String[leaves.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = leaves.get(i).getField();
+        }
+
+        return fields;
+    }
+
+    private static DataType[] leafDataTypes(List<Head> head) {
+        List<Head> leaves = leaves(head);
+        DataType[] dataTypes = new DataType[leaves.size()];
+        for (int i = 0; i < dataTypes.length; i++) {
+            dataTypes[i] = leaves.get(i).getDataType();
+        }
+
+        return dataTypes;
+    }
+
+    private static String[] fieldsOf(RowCursor cursor) {
+        String[] fields = new String[cursor.columnCount()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = cursor.field(i);
+        }
+
+        return fields;
+    }
+
+    private static DataType[] dataTypesOf(RowCursor cursor) {
+        DataType[] dataTypes = new DataType[cursor.columnCount()];
+        for (int i = 0; i < dataTypes.length; i++) {
+            dataTypes[i] = cursor.dataType(i);
+        }
+
+        return dataTypes;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int modCount() {
+        return modCount;
+    }
+
+    public int columnCount() {
+        return columns.length;
+    }
+
+    // 字段对应的列索引, 不存在时返回-1
+    @Override
+    public int columnIndex(String field) {
+        Integer index = field2index.get(field);
+        return index == null ? -1 : index;
+    }
+
+    public String field(int column) {
+        return columns[column].field;
+    }
+
+    public DataType dataType(int column) {
+        return columns[column].dataType;
+    }
+
+    // 清空所有行, 保留已分配的空间
+    public void clear() {
+        for (Col col : columns) {
+            col.clear();
+        }
+
+        size = 0;
+        modCount++;
+    }
+
+    // 追加一个所有列都为空的行, 返回行索引
+    public int addRow() {
+        if (size == capacity) {
+            capacity = capacity + (capacity >> 1);
+            for (Col col : columns) {
+                col.ensureCapacity(capacity);
+            }
+        }
+
+        modCount++;
+        return size++;
+    }
+
+    // 按字段名追加一行, 表头中不存在的字段忽略
+    public int addRow(Map<String, Object> data) {
+        int row = addRow();
+
+        int column;
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            column = columnIndex(entry.getKey());
+            if (column >= 0) {
+                setValue(row, column, entry.getValue());
+            }
+        }
+
+        return row;
+    }
+
+    // 从游标当前行追加一行, 游标的列须与本数据的列一致
+    public int addRow(RowCursor cursor) {
+        int row = addRow();
+
+        for (int c = 0; c < columns.length; c++) {
+            if (cursor.isNull(c)) {
+                continue;
+            }
+
+            switch (columns[c].dataType) {
+                case INTEGER:
+                case DATE:
+                    columns[c].setLong(row, cursor.getLong(c));
+                    break;
+                case DOUBLE:
+                    columns[c].setDouble(row, cursor.getDouble(c));
+                    break;
+                default:
+                    columns[c].setString(row, cursor.getString(c));
+            }
+        }
+
+        return row;
+    }
+
+    // INTEGER列
+    public void setLong(int row, int column, long value) {
+        columns[column].setLong(row, value);
+    }
+
+    // DOUBLE列
+    public void setDouble(int row, int column, double value) {
+        columns[column].setDouble(row, value);
+    }
+
+    // DATE列, 毫秒时间戳
+    public void setDate(int row, int column, long millis) {
+        Col col = columns[column];
+        if (col.dataType != DataType.DATE) {
+            throw new IllegalArgumentException("column " + col.field + " is " + col.dataType + ", not DATE");
+        }
+
+        col.setLong(row, millis);
+    }
+
+    // STRING列
+    public void setString(int row, int column, String value) {
+        columns[column].setString(row, value);
+    }
+
+    // 按列类型转换后写入, null表示空值
+    public void setValue(int row, int column, Object value) {
+        if (value == null) {
+            columns[column].present.clear(row);
+        } else {
+            columns[column].setValue(row, value);
+        }
+    }
+
+    public boolean isNull(int row, int column) {
+        return !columns[column].present.get(row);
+    }
+
+    public long getLong(int row, int column) {
+        return columns[column].getLong(row);
+    }
+
+    public double getDouble(int row, int column) {
+        return columns[column].getDouble(row);
+    }
+
+    public String getString(int row, int column) {
+        return columns[column].getString(row);
+    }
+
+    // 装箱后的值, 仅用于兼容Data
+    public Object getValue(int row, int column) {
+        return isNull(row, column) ? null : columns[column].getValue(row);
+    }
+
+    // 按行顺序读取的游标, order为null时按添加顺序
+    @Override
+    public RowCursor cursor(int[] order) {
+        return new Cursor(order);
+    }
+
+    private final class Cursor implements RowCursor {
+        private final int[] order;
+        private final int end;                              // 创建游标时的行数, 之后追加的行不读取
+        private int position = -1;
+        private int row = -1;
+
+        Cursor(int[] order) {
+            this.order = order;
+            this.end = order == null ? size : order.length;
+        }
+
+        @Override
+        public int columnCount() {
+            return ColumnarData.this.columnCount();
+        }
+
+        @Override
+        public String field(int column) {
+            return ColumnarData.this.field(column);
+        }
+
+        @Override
+        public DataType dataType(int column) {
+            return ColumnarData.this.dataType(column);
+        }
+
+        @Override
+        public boolean next() {
+            if (position + 1 >= end) {
+                return false;
+            }
+
+            position++;
+            row = order == null ? position : order[position];
+            return true;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return ColumnarData.this.isNull(row, column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            return ColumnarData.this.getLong(row, column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return ColumnarData.this.getDouble(row, column);
+        }
+
+        @Override
+        public String getString(int column) {
+            return ColumnarData.this.getString(row, column);
+        }
+    }
+
+    // STRING列的字典编码
+    int stringCode(int row, int column) {
+        return ((StringCol) columns[column]).codes[row];
+    }
+
+    // STRING列的字典大小
+    int dictionarySize(int column) {
+        return ((StringCol) columns[column]).dictionary.size();
+    }
+
+    /**
+     * 按keys列依次排序后的行顺序, 空值在前, 相等的行保持添加顺序
+     */
+    @Override
+    public int[] sortedOrder(int[] keys) {
+        int[][] ranks = new int[keys.length][];
+        int[] cardinality = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            ranks[i] = new int[size];
+            cardinality[i] = columns[keys[i]].rank(size, ranks[i]);
+        }
+
+        return GroupKeySorter.order(ranks, cardinality, size);
+    }
+
+    // 同一列两行的值是否相等, 空值只与空值相等
+    public boolean valueEquals(int column, int row1, int row2) {
+        Col col = columns[column];
+        boolean present1 = col.present.get(row1);
+        boolean present2 = col.present.get(row2);
+
+        if (present1 && present2) {
+            return col.valueEquals(row1, row2);
+        }
+
+        return present1 == present2;
+    }
+
+    // 同一列两行的值比较, 空值排在最前
+    public int valueCompare(int column, int row1, int row2) {
+        Col col = columns[column];
+        boolean present1 = col.present.get(row1);
+        boolean present2 = col.present.get(row2);
+
+        if (present1 && present2) {
+            return col.valueCompare(row1, row2);
+        }
+
+        return present1 == present2 ? 0 : (present1 ? 1 : -1);
+    }
+}
@@ -0,0 +1,31 @@
+package minor.zzz.util.excel;
+
+/**
+ * 导出过程的监听接口, 用于统计各阶段耗时和写出的数据量.
+ *
+ * 回调在导出线程中执行, 同一监听器可能被多个同时进行的导出调用, 实现需要线程安全;
+ * 默认为{@link #NONE}, 此时不统计合并单元格耗时和输出字节数.
+ */
+public interface ExportListener {
+
+    ExportListener NONE = new ExportListener() {
+    };
+
+    /**
+     * @param format 导出格式: XLS、XLSX、CSV、HTML等
+     */
+    default void exportStarted(String format) {
+    }
+
+    /**
+     * 一个阶段结束; MERGE在表体生成后报告一次累计值
+     */
+    default void phaseCompleted(ExportPhase phase, long nanos) {
+    }
+
+    default void exportCompleted(ExportStatistics statistics) {
+    }
+
+    default void exportFailed(Throwable error) {
+    }
+}
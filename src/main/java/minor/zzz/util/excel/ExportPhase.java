@@ -0,0 +1,12 @@
+package minor.zzz.util.excel;
+
+/**
+ * 导出的各阶段
+ */
+public enum ExportPhase {
+    SORT,               // 按分组列排序: 数据或分组列变化后第一次导出时的内存排序, 或未排序数据源的外部排序
+    HEAD,               // 生成表头(每个sheet)
+    BODY,               // 生成表体, 含合并单元格; 文本格式同时含写出
+    MERGE,              // 创建合并单元格, 为各线程的累计时间
+    WRITE               // 工作簿写出到输出流
+}
@@ -0,0 +1,113 @@
+package minor.zzz.util.excel;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 一次导出的统计, 结束时交给监听器. 监听器为{@link ExportListener#NONE}时只记录各阶段耗时.
+ *
+ * 行数、单元格数由各sheet写完后汇总, 可在并行生成sheet的工作线程中调用.
+ */
+class ExportRecorder {
+
+    private final ExportListener listener;
+    private final boolean enabled;
+    private final String format;
+    private final long start = System.nanoTime();
+    private final long[] phaseNanos = new long[ExportPhase.values().length];
+
+    private long rows;
+    private long cells;
+    private long mergedRegions;
+    private long mergeNanos;
+    private long peakBufferedRows;
+    private CountingOutputStream counter;
+
+    ExportRecorder(ExportListener listener, String format) {
+        this.listener = listener;
+        this.enabled = listener != ExportListener.NONE;
+        this.format = format;
+
+        listener.exportStarted(format);
+    }
+
+    // 是否需要统计合并单元格耗时等有额外开销的数据
+    boolean enabled() {
+        return enabled;
+    }
+
+    void phase(ExportPhase phase, long begin) {
+        long nanos = System.nanoTime() - begin;
+        phaseNanos[phase.ordinal()] += nanos;
+
+        listener.phaseCompleted(phase, nanos);
+    }
+
+    synchronized void add(long rows, long cells, long mergedRegions, long mergeNanos) {
+        this.rows += rows;
+        this.cells += cells;
+        this.mergedRegions += mergedRegions;
+        this.mergeNanos += mergeNanos;
+    }
+
+    // 只在导出线程中调用
+    void buffered(long rows) {
+        if (rows > peakBufferedRows) {
+            peakBufferedRows = rows;
+        }
+    }
+
+    // 统计输出字节数, 未设置监听器时直接返回out
+    OutputStream count(OutputStream out) {
+        if (!enabled) {
+            return out;
+        }
+
+        counter = new CountingOutputStream(out);
+        return counter;
+    }
+
+    void completed() {
+        long mergeTotal;
+        synchronized (this) {
+            mergeTotal = mergeNanos;
+        }
+        if (mergeTotal > 0) {
+            phaseNanos[ExportPhase.MERGE.ordinal()] = mergeTotal;
+            listener.phaseCompleted(ExportPhase.MERGE, mergeTotal);
+        }
+
+        ExportStatistics statistics;
+        synchronized (this) {
+            statistics = new ExportStatistics(format, System.nanoTime() - start, phaseNanos,
+                    rows, cells, mergedRegions, counter == null ? 0 : counter.count, peakBufferedRows);
+        }
+
+        listener.exportCompleted(statistics);
+    }
+
+    void failed(Throwable error) {
+        listener.exportFailed(error);
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
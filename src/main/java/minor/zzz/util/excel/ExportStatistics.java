@@ -0,0 +1,84 @@
+package minor.zzz.util.excel;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次导出的统计结果
+ */
+public final class ExportStatistics {
+
+    private final String format;
+    private final long totalNanos;
+    private final long[] phaseNanos;
+    private final long rows;
+    private final long cells;
+    private final long mergedRegions;
+    private final long bytes;
+    private final long peakBufferedRows;
+
+    ExportStatistics(String format, long totalNanos, long[] phaseNanos,
+                     long rows, long cells, long mergedRegions, long bytes, long peakBufferedRows) {
+        this.format = format;
+        this.totalNanos = totalNanos;
+        this.phaseNanos = phaseNanos.clone();
+        this.rows = rows;
+        this.cells = cells;
+        this.mergedRegions = mergedRegions;
+        this.bytes = bytes;
+        this.peakBufferedRows = peakBufferedRows;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getPhaseNanos(ExportPhase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    // 写出的数据行数, 含小计、合计行, 不含表头
+    public long getRows() {
+        return rows;
+    }
+
+    // 写出的非空数据单元格数
+    public long getCells() {
+        return cells;
+    }
+
+    // 合并单元格数, html为rowspan/colspan大于1的单元格数
+    public long getMergedRegions() {
+        return mergedRegions;
+    }
+
+    // 输出的字节数, 导出到Writer或未设置监听器时为0
+    public long getBytes() {
+        return bytes;
+    }
+
+    // 同时缓存在内存中的最大行数(分组缓存和并行生成的sheet)
+    public long getPeakBufferedRows() {
+        return peakBufferedRows;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ExportStatistics[format=").append(format)
+                .append(", total=").append(TimeUnit.NANOSECONDS.toMillis(totalNanos)).append("ms");
+        for (ExportPhase phase : ExportPhase.values()) {
+            builder.append(", ").append(phase.name().toLowerCase()).append('=')
+                    .append(TimeUnit.NANOSECONDS.toMillis(phaseNanos[phase.ordinal()])).append("ms");
+        }
+
+        return builder.append(", rows=").append(rows)
+                .append(", cells=").append(cells)
+                .append(", mergedRegions=").append(mergedRegions)
+                .append(", bytes=").append(bytes)
+                .append(", peakBufferedRows=").append(peakBufferedRows)
+                .append(']').toString();
+    }
+}
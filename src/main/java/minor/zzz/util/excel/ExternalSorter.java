@@ -0,0 +1,448 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * 超出内存的数据按分组列排序(外部归并排序).
+ *
+ * 数据按内存预算分块读入ColumnarData, 每块排序后以紧凑的二进制格式写入临时文件(一个有序段),
+ * 最后多路归并各有序段, 归并结果以游标方式逐行读出. 相等的行保持读入顺序, 与内存排序的结果一致.
+ * 每路归并占用一个读缓冲区, 段数超过一次归并的路数时先把相邻的段归并为较大的段, 直到一次可以归并完.
+ *
+ * 有序段格式: 行数(int), 之后每行为空值位图 + 各非空列的值; INTEGER/DATE为long, DOUBLE为double,
+ * STRING为段内字典编码(int), 字符串第一次出现时编码写为-1并紧跟UTF-8字节长度(int)和字节;
+ * 字典已满时新字符串编码写为-2, 同样紧跟长度和字节, 不加入字典.
+ */
+class ExternalSorter {
+
+    private static final int RUN_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_FAN_IN = 64;                          // 一次归并的最大段数
+    private static final int MAX_RUN_DICTIONARY = 4096;                // 每个有序段每列字典的最大字符串数
+    private static final int ROW_OVERHEAD = 28;                        // 排序用的行顺序数组等每行额外开销
+    private static final int STRING_OVERHEAD = 56;                     // 字典中每个字符串的对象及映射开销
+
+    private final List<Head> head;
+    private final int[] keys;
+    private final long memoryBudget;
+    private final Path tempDirectory;
+
+    /**
+     * @param keys 排序列在游标中的索引, 按分组层级排列
+     * @param memoryBudget 每块数据的内存预算(字节), 为估算值
+     */
+    ExternalSorter(List<Head> head, int[] keys, long memoryBudget, Path tempDirectory) {
+        this.head = head;
+        this.keys = keys;
+        this.memoryBudget = memoryBudget;
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * 读取source的全部行并关闭source(之后只读取其列信息), 返回排序后的游标; 数据未超出内存预算时不写临时文件
+     */
+    RowCursor sort(RowCursor source) throws IOException {
+        List<Path> runs = new ArrayList<>();
+
+        try {
+            int columnCount = source.columnCount();
+            int rowBytes = ROW_OVERHEAD;
+            for (int c = 0; c < columnCount; c++) {
+                rowBytes += source.dataType(c) == DataType.STRING ? 4 : 8;
+            }
+
+            ColumnarData chunk = new ColumnarData(head);
+            int[] dictionarySize = new int[columnCount];
+            long chunkBytes = 0;
+
+            while (source.next()) {
+                chunk.addRow(source);
+                chunkBytes += rowBytes;
+
+                for (int c = 0; c < columnCount; c++) {
+                    if (source.dataType(c) == DataType.STRING && chunk.dictionarySize(c) > dictionarySize[c]) {
+                        dictionarySize[c] = chunk.dictionarySize(c);
+                        chunkBytes += STRING_OVERHEAD + 2L * source.getString(c).length();
+                    }
+                }
+
+                if (chunkBytes >= memoryBudget) {
+                    runs.add(writeRun(chunk));
+
+                    chunk = new ColumnarData(head);
+                    Arrays.fill(dictionarySize, 0);
+                    chunkBytes = 0;
+                }
+            }
+
+            if (runs.isEmpty()) {
+                return chunk.cursor(chunk.sortedOrder(keys));
+            }
+
+            if (chunk.size() > 0) {
+                runs.add(writeRun(chunk));
+            }
+
+            reduce(source, runs);
+
+            return new MergeCursor(source, runs);
+        } catch (IOException | RuntimeException e) {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+
+            throw e;
+        } finally {
+            source.close();
+        }
+    }
+
+    // 一次归并的段数: 每段一个读缓冲区, 缓冲区总大小不超过内存预算, 至少为2
+    private int fanIn() {
+        return (int) Math.max(2, Math.min(MAX_FAN_IN, memoryBudget / RUN_BUFFER_SIZE));
+    }
+
+    /**
+     * 段数超过fanIn时, 每次把相邻的fanIn个段归并为一个段, 直到不超过fanIn.
+     * 只归并相邻的段, 相等的行仍保持读入顺序; 归并过的段在读完时删除, runs替换为新的段
+     */
+    private void reduce(RowCursor schema, List<Path> runs) throws IOException {
+        int fanIn = fanIn();
+        while (runs.size() > fanIn) {
+            List<Path> merged = new ArrayList<>();
+            try {
+                for (int i = 0; i < runs.size(); i += fanIn) {
+                    List<Path> group = runs.subList(i, Math.min(i + fanIn, runs.size()));
+                    if (group.size() == 1) {
+                        merged.add(group.get(0));
+                        continue;
+                    }
+
+                    try (MergeCursor cursor = new MergeCursor(schema, new ArrayList<>(group))) {
+                        merged.add(writeRun(cursor, cursor.size()));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                for (Path run : merged) {
+                    Files.deleteIfExists(run);
+                }
+
+                throw e;
+            }
+
+            runs.clear();
+            runs.addAll(merged);
+        }
+    }
+
+    private Path writeRun(ColumnarData chunk) throws IOException {
+        return writeRun(chunk.cursor(chunk.sortedOrder(keys)), chunk.size());
+    }
+
+    // 把游标的全部行写成一个有序段
+    private Path writeRun(RowCursor rows, int count) throws IOException {
+        int columnCount = rows.columnCount();
+        List<Map<String, Integer>> dictionaries = new ArrayList<>();       // 字符串 -> 段内字典编码
+        for (int c = 0; c < columnCount; c++) {
+            dictionaries.add(rows.dataType(c) == DataType.STRING ? new HashMap<String, Integer>() : null);
+        }
+
+        byte[] nulls = new byte[(columnCount + 7) / 8];
+
+        Path run = Files.createTempFile(tempDirectory, "report-sort-", ".run");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), RUN_BUFFER_SIZE))) {
+            out.writeInt(count);
+
+            String value;
+            Integer code;
+            byte[] bytes;
+            Map<String, Integer> dictionary;
+            while (rows.next()) {
+                Arrays.fill(nulls, (byte) 0);
+                for (int c = 0; c < columnCount; c++) {
+                    if (rows.isNull(c)) {
+                        nulls[c >> 3] |= 1 << (c & 7);
+                    }
+                }
+                out.write(nulls);
+
+                for (int c = 0; c < columnCount; c++) {
+                    if (rows.isNull(c)) {
+                        continue;
+                    }
+
+                    switch (rows.dataType(c)) {
+                        case INTEGER:
+                        case DATE:
+                            out.writeLong(rows.getLong(c));
+                            break;
+                        case DOUBLE:
+                            out.writeDouble(rows.getDouble(c));
+                            break;
+                        default:
+                            value = rows.getString(c);
+                            dictionary = dictionaries.get(c);
+                            code = dictionary.get(value);
+                            if (code != null) {
+                                out.writeInt(code);
+                                break;
+                            }
+
+                            if (dictionary.size() < MAX_RUN_DICTIONARY) {
+                                dictionary.put(value, dictionary.size());
+                                out.writeInt(-1);
+                            } else {
+                                out.writeInt(-2);
+                            }
+
+                            bytes = value.getBytes(StandardCharsets.UTF_8);
+                            out.writeInt(bytes.length);
+                            out.write(bytes);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(run);
+            throw e;
+        }
+
+        return run;
+    }
+
+    // 同一列两个游标当前行的值比较, 空值在前
+    private static int compare(RowCursor cursor1, RowCursor cursor2, int column) {
+        boolean null1 = cursor1.isNull(column);
+        boolean null2 = cursor2.isNull(column);
+        if (null1 || null2) {
+            return null1 == null2 ? 0 : (null1 ? -1 : 1);
+        }
+
+        switch (cursor1.dataType(column)) {
+            case INTEGER:
+            case DATE:
+                return Long.compare(cursor1.getLong(column), cursor2.getLong(column));
+            case DOUBLE:
+                return Double.compare(cursor1.getDouble(column), cursor2.getDouble(column));
+            default:
+                return cursor1.getString(column).compareTo(cursor2.getString(column));
+        }
+    }
+
+    // 逐行读取一个有序段, 读完或关闭时删除临时文件
+    private final class RunReader extends SlotRowCursor {
+        private final Path path;
+        private final int index;                                        // 段序号, 键相等时序号小的在前
+        private final DataInputStream in;
+        private final List<List<String>> dictionaries = new ArrayList<>();
+        private final byte[] nulls;
+        private byte[] buffer = new byte[64];
+        private final int size;
+        private int remaining;
+
+        RunReader(Path path, int index) throws IOException {
+            super(head);
+
+            this.path = path;
+            this.index = index;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), RUN_BUFFER_SIZE));
+            try {
+                this.size = in.readInt();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            this.remaining = size;
+            this.nulls = new byte[(fields.length + 7) / 8];
+
+            for (int c = 0; c < fields.length; c++) {
+                dictionaries.add(dataTypes[c] == DataType.STRING ? new ArrayList<String>() : null);
+            }
+        }
+
+        @Override
+        public boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+
+            remaining--;
+
+            try {
+                in.readFully(nulls);
+
+                for (int c = 0; c < fields.length; c++) {
+                    present[c] = (nulls[c >> 3] & (1 << (c & 7))) == 0;
+                    if (!present[c]) {
+                        continue;
+                    }
+
+                    switch (dataTypes[c]) {
+                        case INTEGER:
+                        case DATE:
+                            longs[c] = in.readLong();
+                            break;
+                        case DOUBLE:
+                            doubles[c] = in.readDouble();
+                            break;
+                        default:
+                            strings[c] = readString(dictionaries.get(c));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return true;
+        }
+
+        private String readString(List<String> dictionary) throws IOException {
+            int code = in.readInt();
+            if (code >= 0) {
+                return dictionary.get(code);
+            }
+
+            int length = in.readInt();
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+
+            String value = new String(buffer, 0, length, StandardCharsets.UTF_8);
+            if (code == -1) {
+                dictionary.add(value);
+            }
+
+            return value;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // 多路归并各有序段
+    private final class MergeCursor implements RowCursor {
+        private final RowCursor schema;
+        private final PriorityQueue<RunReader> queue;
+        private RunReader current;
+        private int size = 0;
+
+        MergeCursor(RowCursor schema, List<Path> runs) throws IOException {
+            this.schema = schema;
+            this.queue = new PriorityQueue<>(runs.size(), new Comparator<RunReader>() {
+                @Override
+                public int compare(RunReader reader1, RunReader reader2) {
+                    int result;
+                    for (int key : keys) {
+                        result = ExternalSorter.compare(reader1, reader2, key);
+                        if (result != 0) {
+                            return result;
+                        }
+                    }
+
+                    return Integer.compare(reader1.index, reader2.index);
+                }
+            });
+
+            RunReader reader;
+            for (int i = 0; i < runs.size(); i++) {
+                try {
+                    reader = new RunReader(runs.get(i), i);
+                } catch (IOException | RuntimeException e) {
+                    close();
+                    for (int j = i; j < runs.size(); j++) {
+                        Files.deleteIfExists(runs.get(j));
+                    }
+
+                    throw e;
+                }
+
+                size += reader.size;
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+        }
+
+        // 各段的总行数
+        int size() {
+            return size;
+        }
+
+        @Override
+        public int columnCount() {
+            return schema.columnCount();
+        }
+
+        @Override
+        public String field(int column) {
+            return schema.field(column);
+        }
+
+        @Override
+        public DataType dataType(int column) {
+            return schema.dataType(column);
+        }
+
+        @Override
+        public boolean next() {
+            if (current != null) {
+                if (current.next()) {
+                    queue.add(current);
+                } else {
+                    current.close();
+                }
+            }
+
+            current = queue.poll();
+
+            return current != null;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return current.isNull(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            return current.getLong(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return current.getDouble(column);
+        }
+
+        @Override
+        public String getString(int column) {
+            return current.getString(column);
+        }
+
+        @Override
+        public void close() {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+
+            while (!queue.isEmpty()) {
+                queue.poll().close();
+            }
+        }
+    }
+}
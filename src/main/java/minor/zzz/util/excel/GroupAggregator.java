@@ -0,0 +1,159 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.Aggregation;
+import minor.zzz.util.excel.ReportTable.DataType;
+
+import java.util.Arrays;
+
+/**
+ * 按分组层级累计聚合列的值.
+ *
+ * 每个分组层级和合计各有一组基本类型累加器, 每读一行同时更新所有层级;
+ * 分组结束时取出该层级的结果并清零, 小计和合计都不需要再次扫描数据.
+ */
+class GroupAggregator {
+
+    private final int[] columns;                    // 聚合列在游标中的索引
+    private final Aggregation[] aggregations;
+    private final DataType[] dataTypes;
+    private final int slots;                        // 分组层级数 + 1, 最后一个为合计
+
+    // 下标为 聚合列 * slots + 层级
+    private final long[] counts;
+    private final long[] longSums;
+    private final double[] doubleSums;
+    private final double[] mins;
+    private final double[] maxs;
+
+    GroupAggregator(RowCursor cursor, int[] columns, Aggregation[] aggregations, int levels) {
+        this.columns = columns;
+        this.aggregations = aggregations;
+        this.dataTypes = new DataType[columns.length];
+        this.slots = levels + 1;
+
+        for (int k = 0; k < columns.length; k++) {
+            dataTypes[k] = cursor.dataType(columns[k]);
+
+            boolean supported;
+            switch (dataTypes[k]) {
+                case STRING:
+                    supported = aggregations[k] == Aggregation.COUNT;
+                    break;
+                case DATE:
+                    supported = aggregations[k] != Aggregation.SUM && aggregations[k] != Aggregation.AVG;
+                    break;
+                default:
+                    supported = true;
+            }
+
+            if (!supported) {
+                throw new IllegalStateException(aggregations[k] + " is not supported for " + dataTypes[k]
+                        + " column: " + cursor.field(columns[k]));
+            }
+        }
+
+        int size = columns.length * slots;
+        this.counts = new long[size];
+        this.longSums = new long[size];
+        this.doubleSums = new double[size];
+        this.mins = new double[size];
+        this.maxs = new double[size];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+    }
+
+    int size() {
+        return columns.length;
+    }
+
+    int column(int k) {
+        return columns[k];
+    }
+
+    Aggregation aggregation(int k) {
+        return aggregations[k];
+    }
+
+    // 当前行计入所有层级, 空值不计数
+    void add(RowCursor cursor) {
+        int column, base;
+        long longValue = 0;
+        double value;
+        for (int k = 0; k < columns.length; k++) {
+            column = columns[k];
+            if (cursor.isNull(column)) {
+                continue;
+            }
+
+            base = k * slots;
+            if (aggregations[k] == Aggregation.COUNT) {
+                for (int i = base; i < base + slots; i++) {
+                    counts[i]++;
+                }
+                continue;
+            }
+
+            if (dataTypes[k] == DataType.DOUBLE) {
+                value = cursor.getDouble(column);
+            } else {
+                longValue = cursor.getLong(column);
+                value = longValue;
+            }
+
+            for (int i = base; i < base + slots; i++) {
+                counts[i]++;
+                longSums[i] += longValue;
+                doubleSums[i] += value;
+                if (value < mins[i]) {
+                    mins[i] = value;
+                }
+                if (value > maxs[i]) {
+                    maxs[i] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * 取出一个层级的结果并清零, 没有值时为NaN(COUNT为0); DATE的MIN/MAX为毫秒数
+     *
+     * @param level 分组层级, 小于0时为合计
+     */
+    double[] take(int level) {
+        int slot = level < 0 ? slots - 1 : level;
+
+        double[] result = new double[columns.length];
+        int i;
+        for (int k = 0; k < columns.length; k++) {
+            i = k * slots + slot;
+
+            if (aggregations[k] == Aggregation.COUNT) {
+                result[k] = counts[i];
+            } else if (counts[i] == 0) {
+                result[k] = Double.NaN;
+            } else {
+                switch (aggregations[k]) {
+                    case SUM:
+                        result[k] = dataTypes[k] == DataType.DOUBLE ? doubleSums[i] : longSums[i];
+                        break;
+                    case AVG:
+                        result[k] = (dataTypes[k] == DataType.DOUBLE ? doubleSums[i] : longSums[i]) / (double) counts[i];
+                        break;
+                    case MIN:
+                        result[k] = mins[i];
+                        break;
+                    default:
+                        result[k] = maxs[i];
+                }
+            }
+
+            counts[i] = 0;
+            longSums[i] = 0;
+            doubleSums[i] = 0;
+            mins[i] = Double.POSITIVE_INFINITY;
+            maxs[i] = Double.NEGATIVE_INFINITY;
+        }
+
+        return result;
+    }
+}
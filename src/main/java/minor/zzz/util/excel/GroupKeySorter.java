@@ -0,0 +1,260 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.DataType;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * 按分组列排序的工具.
+ *
+ * 每个分组列先按类型一次性计算各行的稠密排名(0表示空值, 空值在前), 之后只比较int排名;
+ * STRING列的字符串按String.compareTo排序;
+ * 各列排名能压缩进一个int时与行号拼成long, 由Arrays.parallelSort排序, 行号保证排序稳定;
+ * 否则按排名数组做稳定的并行归并排序.
+ */
+final class GroupKeySorter {
+
+    private static final int PARALLEL_THRESHOLD = 1 << 13;      // 行数较少时不值得并行
+
+    private GroupKeySorter() {
+    }
+
+    private static IntStream rows(int size) {
+        IntStream rows = IntStream.range(0, size);
+        return size < PARALLEL_THRESHOLD ? rows : rows.parallel();
+    }
+
+    /**
+     * 计算long列的排名, 返回排名种类数(含空值)
+     */
+    static int rankLongs(final long[] values, final BitSet present, int size, final int[] ranks) {
+        long[] distinct = new long[present.cardinality()];
+        int n = 0;
+        for (int row = present.nextSetBit(0); row >= 0 && row < size; row = present.nextSetBit(row + 1)) {
+            distinct[n++] = values[row];
+        }
+
+        Arrays.parallelSort(distinct, 0, n);
+        final int m = unique(distinct, n);
+        final long[] sorted = distinct;
+
+        rows(size).forEach(row ->
+                ranks[row] = present.get(row) ? Arrays.binarySearch(sorted, 0, m, values[row]) + 1 : 0);
+
+        return m + 1;
+    }
+
+    /**
+     * 计算double列的排名, 顺序与Double.compare一致, 返回排名种类数(含空值)
+     */
+    static int rankDoubles(final double[] values, final BitSet present, int size, final int[] ranks) {
+        double[] distinct = new double[present.cardinality()];
+        int n = 0;
+        for (int row = present.nextSetBit(0); row >= 0 && row < size; row = present.nextSetBit(row + 1)) {
+            distinct[n++] = values[row];
+        }
+
+        Arrays.parallelSort(distinct, 0, n);
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (m == 0 || Double.compare(distinct[m - 1], distinct[i]) != 0) {
+                distinct[m++] = distinct[i];
+            }
+        }
+        final int count = m;
+        final double[] sorted = distinct;
+
+        rows(size).forEach(row ->
+                ranks[row] = present.get(row) ? Arrays.binarySearch(sorted, 0, count, values[row]) + 1 : 0);
+
+        return count + 1;
+    }
+
+    /**
+     * 计算字符串的排名, 顺序与String.compareTo一致, 返回排名种类数(含空值)
+     */
+    static int rankStrings(final String[] values, int size, final int[] ranks) {
+        Set<String> set = new HashSet<>();
+        for (int row = 0; row < size; row++) {
+            if (values[row] != null) {
+                set.add(values[row]);
+            }
+        }
+
+        String[] distinct = set.toArray(new String[0]);
+        Arrays.parallelSort(distinct);
+
+        // 字符串互不相同, 排名即下标+1
+        final Map<String, Integer> rankOf = new HashMap<>(distinct.length * 2);
+        for (int i = 0; i < distinct.length; i++) {
+            rankOf.put(distinct[i], i + 1);
+        }
+
+        rows(size).forEach(row -> ranks[row] = values[row] == null ? 0 : rankOf.get(values[row]));
+
+        return distinct.length + 1;
+    }
+
+    /**
+     * 计算任意Comparable值的排名, 顺序与compareTo一致, compareTo相等的值排名相同, 返回排名种类数(含空值)
+     */
+    @SuppressWarnings("unchecked")
+    static int rankComparables(final Object[] values, int size, final int[] ranks) {
+        Set<Object> set = new HashSet<>();
+        for (int row = 0; row < size; row++) {
+            if (values[row] != null) {
+                set.add(values[row]);
+            }
+        }
+
+        Object[] distinct = set.toArray();
+        Arrays.parallelSort(distinct, new Comparator<Object>() {
+            @Override
+            public int compare(Object o1, Object o2) {
+                return ((Comparable<Object>) o1).compareTo(o2);
+            }
+        });
+
+        final Map<Object, Integer> rankOf = new HashMap<>(distinct.length * 2);
+        int rank = 0;
+        for (int i = 0; i < distinct.length; i++) {
+            if (i == 0 || ((Comparable<Object>) distinct[i - 1]).compareTo(distinct[i]) != 0) {
+                rank++;
+            }
+            rankOf.put(distinct[i], rank);
+        }
+
+        rows(size).forEach(row -> ranks[row] = values[row] == null ? 0 : rankOf.get(values[row]));
+
+        return rank + 1;
+    }
+
+    /**
+     * 按表头数据类型计算Data中取出的值的排名, 返回排名种类数(含空值).
+     * STRING列及实际类型与表头不符的值按Comparable比较, 即字符串按String.compareTo, 日期、数字等按各自的值
+     */
+    static int rankValues(Object[] values, DataType dataType, int size, int[] ranks) {
+        boolean typed = dataType != DataType.STRING;
+        Object value;
+        for (int row = 0; row < size && typed; row++) {
+            value = values[row];
+            if (value == null) {
+                continue;
+            }
+
+            switch (dataType) {
+                case INTEGER:
+                    typed = value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+                    break;
+                case DOUBLE:
+                    typed = value instanceof Double || value instanceof Float;
+                    break;
+                default:
+                    typed = value.getClass() == Date.class;
+            }
+        }
+
+        if (!typed) {
+            return rankComparables(values, size, ranks);
+        }
+
+        BitSet present = new BitSet(size);
+        if (dataType == DataType.DOUBLE) {
+            double[] doubles = new double[size];
+            for (int row = 0; row < size; row++) {
+                if (values[row] != null) {
+                    doubles[row] = ((Number) values[row]).doubleValue();
+                    present.set(row);
+                }
+            }
+
+            return rankDoubles(doubles, present, size, ranks);
+        }
+
+        long[] longs = new long[size];
+        for (int row = 0; row < size; row++) {
+            if (values[row] != null) {
+                longs[row] = dataType == DataType.DATE ? ((Date) values[row]).getTime() : ((Number) values[row]).longValue();
+                present.set(row);
+            }
+        }
+
+        return rankLongs(longs, present, size, ranks);
+    }
+
+    // 已排序数组去重, 返回去重后的长度
+    private static int unique(long[] sorted, int n) {
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (m == 0 || sorted[m - 1] != sorted[i]) {
+                sorted[m++] = sorted[i];
+            }
+        }
+
+        return m;
+    }
+
+    /**
+     * 按各列排名依次排序后的行顺序, 排名相同的行保持原顺序
+     *
+     * @param ranks 各分组列的排名, 按分组层级排列
+     * @param cardinality 各分组列的排名种类数
+     */
+    static int[] order(final int[][] ranks, final int[] cardinality, int size) {
+        int[] order = new int[size];
+
+        long radix = 1;
+        for (int c : cardinality) {
+            radix *= c;
+            if (radix > Integer.MAX_VALUE) {
+                break;
+            }
+        }
+
+        if (radix <= Integer.MAX_VALUE) {
+            // 组合排名在高32位, 行号在低32位
+            final long[] packed = new long[size];
+            rows(size).forEach(row -> {
+                long composite = 0;
+                for (int c = 0; c < ranks.length; c++) {
+                    composite = composite * cardinality[c] + ranks[c][row];
+                }
+                packed[row] = composite << 32 | row;
+            });
+
+            Arrays.parallelSort(packed);
+
+            for (int i = 0; i < size; i++) {
+                order[i] = (int) packed[i];
+            }
+        } else {
+            Integer[] rows = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                rows[i] = i;
+            }
+
+            // 对象数组的parallelSort是稳定排序
+            Arrays.parallelSort(rows, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer row1, Integer row2) {
+                    int result;
+                    for (int[] rank : ranks) {
+                        result = Integer.compare(rank[row1], rank[row2]);
+                        if (result != 0) {
+                            return result;
+                        }
+                    }
+
+                    return 0;
+                }
+            });
+
+            for (int i = 0; i < size; i++) {
+                order[i] = rows[i];
+            }
+        }
+
+        return order;
+    }
+}
@@ -0,0 +1,112 @@
+package minor.zzz.util.excel;
+
+/**
+ * 逐行跟踪分组列的值, 在一次遍历中找出分组边界, 只保存上一行的分组值.
+ *
+ * 分组按层级排列, 上层分组变化时下层分组同时结束.
+ */
+class GroupTracker {
+
+    private final RowCursor cursor;
+    private final int[] groupColumns;
+    private final boolean verifyOrder;
+
+    private final boolean[] present;
+    private final long[] longs;
+    private final double[] doubles;
+    private final String[] strings;
+
+    private boolean first = true;
+
+    /**
+     * @param groupColumns 分组列在游标中的索引, 按分组层级排列
+     * @param verifyOrder 是否校验数据已按分组列排序(空值在前, STRING列按String.compareTo), 未排序时抛出IllegalStateException
+     */
+    GroupTracker(RowCursor cursor, int[] groupColumns, boolean verifyOrder) {
+        this.cursor = cursor;
+        this.groupColumns = groupColumns;
+        this.verifyOrder = verifyOrder;
+
+        this.present = new boolean[groupColumns.length];
+        this.longs = new long[groupColumns.length];
+        this.doubles = new double[groupColumns.length];
+        this.strings = new String[groupColumns.length];
+    }
+
+    int levels() {
+        return groupColumns.length;
+    }
+
+    int groupColumn(int level) {
+        return groupColumns[level];
+    }
+
+    /**
+     * 读取游标当前行的分组值, 返回第一个发生变化的分组层级; 第一行返回0, 均未变化时返回levels()
+     */
+    int advance() {
+        int changed = first ? 0 : groupColumns.length;
+
+        int column;
+        for (int level = 0; level < groupColumns.length; level++) {
+            column = groupColumns[level];
+
+            if (changed == groupColumns.length) {
+                int compare = compare(level, column);
+                if (compare != 0) {
+                    if (verifyOrder && compare < 0) {
+                        throw new IllegalStateException("data is not sorted by group field " + cursor.field(column));
+                    }
+
+                    changed = level;
+                }
+            }
+
+            if (changed <= level) {
+                remember(level, column);
+            }
+        }
+
+        first = false;
+
+        return changed;
+    }
+
+    // 当前行与上一行的分组值比较, 空值在前
+    private int compare(int level, int column) {
+        boolean isNull = cursor.isNull(column);
+        if (isNull || !present[level]) {
+            return isNull == !present[level] ? 0 : (isNull ? -1 : 1);
+        }
+
+        switch (cursor.dataType(column)) {
+            case INTEGER:
+            case DATE:
+                return Long.compare(cursor.getLong(column), longs[level]);
+            case DOUBLE:
+                return Double.compare(cursor.getDouble(column), doubles[level]);
+            default:
+                String value = cursor.getString(column);
+                return value == strings[level] ? 0 : value.compareTo(strings[level]);
+        }
+    }
+
+    private void remember(int level, int column) {
+        present[level] = !cursor.isNull(column);
+        if (!present[level]) {
+            return;
+        }
+
+        switch (cursor.dataType(column)) {
+            case INTEGER:
+            case DATE:
+                longs[level] = cursor.getLong(column);
+                break;
+            case DOUBLE:
+                doubles[level] = cursor.getDouble(column);
+                break;
+            default:
+                strings[level] = cursor.getString(column);
+        }
+    }
+}
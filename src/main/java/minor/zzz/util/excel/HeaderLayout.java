@@ -0,0 +1,204 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.Aggregation;
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译后的表头布局: 各表头单元格的位置和跨行、跨列数, 以及叶子表头字段到列索引的映射.
+ *
+ * 一次遍历表头树生成, 编译时复制表头的属性, 之后不可变, 可在多个ReportTable之间、多个线程中共享;
+ * 编译后再修改表头不影响已编译的布局
+ */
+public final class HeaderLayout {
+
+    // 一个表头单元格, 行列为相对表头左上角的索引
+    public static final class HeadCell {
+        private final String name;
+        private final int row;
+        private final int column;
+        private final int rowSpan;
+        private final int columnSpan;
+
+        private HeadCell(String name, int row, int column, int rowSpan, int columnSpan) {
+            this.name = name;
+            this.row = row;
+            this.column = column;
+            this.rowSpan = rowSpan;
+            this.columnSpan = columnSpan;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        public int getRowSpan() {
+            return rowSpan;
+        }
+
+        public int getColumnSpan() {
+            return columnSpan;
+        }
+
+        public int getLastRow() {
+            return row + rowSpan - 1;
+        }
+
+        public int getLastColumn() {
+            return column + columnSpan - 1;
+        }
+
+        // 跨多个单元格时需要合并
+        public boolean isMerged() {
+            return rowSpan > 1 || columnSpan > 1;
+        }
+    }
+
+    private final List<Head> head;
+    private final int depth;
+    private final List<HeadCell> cells;             // 按行、列排序
+    private final String[] fields;                  // 下标为叶子表头的列索引
+    private final String[] names;
+    private final DataType[] dataTypes;
+    private final String[] formats;
+    private final Aggregation[] aggregations;
+    private final Map<String, Integer> field2column;
+
+    private HeaderLayout(List<Head> head) {
+        this.head = Collections.unmodifiableList(new ArrayList<>(head));
+
+        int depth = 0;
+        for (Head h : head) {
+            depth = Math.max(depth, depthOf(h));
+        }
+        this.depth = depth;
+
+        List<List<HeadCell>> rows = new ArrayList<>();
+        for (int i = 0; i < depth; i++) {
+            rows.add(new ArrayList<HeadCell>());
+        }
+        List<Head> leaves = new ArrayList<>();
+        int column = 0;
+        for (Head h : head) {
+            column += place(h, 0, column, rows, leaves);
+        }
+
+        List<HeadCell> cells = new ArrayList<>();
+        for (List<HeadCell> row : rows) {
+            cells.addAll(row);
+        }
+        this.cells = Collections.unmodifiableList(cells);
+
+        int width = leaves.size();
+        this.fields = new String[width];
+        this.names = new String[width];
+        this.dataTypes = new DataType[width];
+        this.formats = new String[width];
+        this.aggregations = new Aggregation[width];
+        this.field2column = new HashMap<>();
+        Head leaf;
+        for (int k = 0; k < width; k++) {
+            leaf = leaves.get(k);
+            fields[k] = leaf.getField();
+            names[k] = leaf.getName();
+            dataTypes[k] = leaf.getDataType();
+            formats[k] = leaf.getFormat();
+            aggregations[k] = leaf.getAggregation();
+            field2column.put(fields[k], k);             // 字段重复时取最后一列
+        }
+    }
+
+    /**
+     * 编译表头
+     *
+     * @param head 第一层表头, 为null时为空表头
+     */
+    public static HeaderLayout compile(List<Head> head) {
+        return new HeaderLayout(head == null ? Collections.<Head>emptyList() : head);
+    }
+
+    private static int depthOf(Head h) {
+        int max = 0;
+        for (Head child : h.children()) {
+            max = Math.max(max, depthOf(child));
+        }
+
+        return max + 1;
+    }
+
+    // 放置表头及其子表头, 返回跨列数; 同一行的单元格按列顺序加入
+    private int place(Head h, int row, int column, List<List<HeadCell>> rows, List<Head> leaves) {
+        if (!h.isGroup()) {
+            leaves.add(h);
+            rows.get(row).add(new HeadCell(h.getName(), row, column, depth - row, 1));      // 叶子表头跨到最后一行
+            return 1;
+        }
+
+        int span = 0;
+        for (Head child : h.children()) {
+            span += place(child, row + 1, column + span, rows, leaves);
+        }
+        rows.get(row).add(new HeadCell(h.getName(), row, column, 1, span));
+
+        return span;
+    }
+
+    // 编译时的第一层表头
+    public List<Head> getHead() {
+        return head;
+    }
+
+    // 表头行数
+    public int getDepth() {
+        return depth;
+    }
+
+    // 叶子表头数, 即数据列数
+    public int getWidth() {
+        return fields.length;
+    }
+
+    public List<HeadCell> getCells() {
+        return cells;
+    }
+
+    public String getField(int column) {
+        return fields[column];
+    }
+
+    public String getName(int column) {
+        return names[column];
+    }
+
+    public DataType getDataType(int column) {
+        return dataTypes[column];
+    }
+
+    public String getFormat(int column) {
+        return formats[column];
+    }
+
+    public Aggregation getAggregation(int column) {
+        return aggregations[column];
+    }
+
+    // 字段所在的列索引, 不存在时为-1
+    public int columnOf(String field) {
+        Integer column = field2column.get(field);
+        return column == null ? -1 : column;
+    }
+}
@@ -0,0 +1,195 @@
+package minor.zzz.util.excel;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 汇总导出统计并以MBean方式暴露, 可由多个ReportTable共用.
+ *
+ * 用法: listener.register("orders"); table.setExportListener(listener);
+ */
+public class JmxExportListener implements ExportListener, JmxExportListenerMBean {
+
+    public static final String DOMAIN = "minor.zzz.util.excel";
+
+    private final LongAdder exportCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder[] phaseNanos = new LongAdder[ExportPhase.values().length];
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder cells = new LongAdder();
+    private final LongAdder mergedRegions = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicLong peakBufferedRows = new AtomicLong();
+    private volatile ExportStatistics lastExport;
+
+    private ObjectName objectName;
+
+    public JmxExportListener() {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+        }
+    }
+
+    // 以DOMAIN:type=ReportExport,name=<name>注册到平台MBeanServer
+    public synchronized void register(String name) {
+        try {
+            register(new ObjectName(DOMAIN + ":type=ReportExport,name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            throw new IllegalArgumentException("illegal mbean name: " + name, e);
+        }
+    }
+
+    public synchronized void register(ObjectName objectName) {
+        if (this.objectName != null) {
+            throw new IllegalStateException("already registered as " + this.objectName);
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to register " + objectName, e);
+        }
+
+        this.objectName = objectName;
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to unregister " + objectName, e);
+        }
+
+        objectName = null;
+    }
+
+    @Override
+    public void phaseCompleted(ExportPhase phase, long nanos) {
+        phaseNanos[phase.ordinal()].add(nanos);
+    }
+
+    @Override
+    public void exportCompleted(ExportStatistics statistics) {
+        exportCount.increment();
+        totalNanos.add(statistics.getTotalNanos());
+        rows.add(statistics.getRows());
+        cells.add(statistics.getCells());
+        mergedRegions.add(statistics.getMergedRegions());
+        bytes.add(statistics.getBytes());
+
+        long peak;
+        do {
+            peak = peakBufferedRows.get();
+        } while (statistics.getPeakBufferedRows() > peak
+                && !peakBufferedRows.compareAndSet(peak, statistics.getPeakBufferedRows()));
+
+        lastExport = statistics;
+    }
+
+    @Override
+    public void exportFailed(Throwable error) {
+        failedCount.increment();
+    }
+
+    private static long millis(LongAdder nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+    }
+
+    @Override
+    public long getExportCount() {
+        return exportCount.sum();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    @Override
+    public long getTotalMillis() {
+        return millis(totalNanos);
+    }
+
+    @Override
+    public long getSortMillis() {
+        return millis(phaseNanos[ExportPhase.SORT.ordinal()]);
+    }
+
+    @Override
+    public long getHeadMillis() {
+        return millis(phaseNanos[ExportPhase.HEAD.ordinal()]);
+    }
+
+    @Override
+    public long getBodyMillis() {
+        return millis(phaseNanos[ExportPhase.BODY.ordinal()]);
+    }
+
+    @Override
+    public long getMergeMillis() {
+        return millis(phaseNanos[ExportPhase.MERGE.ordinal()]);
+    }
+
+    @Override
+    public long getWriteMillis() {
+        return millis(phaseNanos[ExportPhase.WRITE.ordinal()]);
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getCells() {
+        return cells.sum();
+    }
+
+    @Override
+    public long getMergedRegions() {
+        return mergedRegions.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getPeakBufferedRows() {
+        return peakBufferedRows.get();
+    }
+
+    @Override
+    public String getLastExport() {
+        ExportStatistics statistics = lastExport;
+        return statistics == null ? null : statistics.toString();
+    }
+
+    @Override
+    public void reset() {
+        exportCount.reset();
+        failedCount.reset();
+        totalNanos.reset();
+        for (LongAdder nanos : phaseNanos) {
+            nanos.reset();
+        }
+        rows.reset();
+        cells.reset();
+        mergedRegions.reset();
+        bytes.reset();
+        peakBufferedRows.set(0);
+        lastExport = null;
+    }
+}
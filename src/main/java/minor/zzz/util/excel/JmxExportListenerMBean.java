@@ -0,0 +1,37 @@
+package minor.zzz.util.excel;
+
+/**
+ * {@link JmxExportListener}的JMX接口, 时间均为累计毫秒数
+ */
+public interface JmxExportListenerMBean {
+
+    long getExportCount();
+
+    long getFailedCount();
+
+    long getTotalMillis();
+
+    long getSortMillis();
+
+    long getHeadMillis();
+
+    long getBodyMillis();
+
+    long getMergeMillis();
+
+    long getWriteMillis();
+
+    long getRows();
+
+    long getCells();
+
+    long getMergedRegions();
+
+    long getBytes();
+
+    long getPeakBufferedRows();
+
+    String getLastExport();
+
+    void reset();
+}
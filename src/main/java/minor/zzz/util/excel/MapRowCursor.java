@@ -0,0 +1,85 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.Head;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * 从逐行到达的Map(如Data)读取的游标, 只保留当前行, 按叶子表头类型转换后存入可复用的槽位.
+ */
+class MapRowCursor extends SlotRowCursor {
+
+    private final Iterator<? extends Map<String, Object>> source;
+
+    private final Map<String, Integer> field2index = new HashMap<>();
+
+    MapRowCursor(List<Head> head, Iterator<? extends Map<String, Object>> source) {
+        super(head);
+
+        this.source = source;
+
+        for (int i = 0; i < fields.length; i++) {
+            field2index.put(fields[i], i);
+        }
+    }
+
+    @Override
+    public boolean next() {
+        if (!source.hasNext()) {
+            return false;
+        }
+
+        Arrays.fill(present, false);
+
+        Integer column;
+        for (Map.Entry<String, Object> entry : source.next().entrySet()) {
+            column = field2index.get(entry.getKey());
+            if (column != null && entry.getValue() != null) {
+                setValue(column, entry.getValue());
+            }
+        }
+
+        return true;
+    }
+
+    // 数据源持有资源(如数据库游标)时一并关闭
+    @Override
+    public void close() {
+        if (source instanceof Closeable) {
+            try {
+                ((Closeable) source).close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void setValue(int column, Object value) {
+        switch (dataTypes[column]) {
+            case INTEGER:
+                longs[column] = value instanceof Number ? ((Number) value).longValue() : Long.parseLong(String.valueOf(value));
+                break;
+            case DOUBLE:
+                doubles[column] = value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(String.valueOf(value));
+                break;
+            case DATE:
+                if (value instanceof Date) {
+                    longs[column] = ((Date) value).getTime();
+                } else if (value instanceof Calendar) {
+                    longs[column] = ((Calendar) value).getTimeInMillis();
+                } else if (value instanceof Number) {
+                    longs[column] = ((Number) value).longValue();
+                } else {
+                    throw new IllegalArgumentException("column " + fields[column] + " is DATE, can not accept " + value.getClass().getName());
+                }
+                break;
+            default:
+                strings[column] = String.valueOf(value);
+        }
+
+        present[column] = true;
+    }
+}
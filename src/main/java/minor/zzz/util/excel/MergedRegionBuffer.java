@@ -0,0 +1,94 @@
+package minor.zzz.util.excel;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTMergeCells;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorksheet;
+
+import java.util.Arrays;
+
+/**
+ * 一个sheet的合并区域缓存.
+ *
+ * 写表体时只记录区域的行列(每个区域4个int), sheet写完后一次写入; 只有一个单元格的区域不合并.
+ * XSSF的addMergedRegion每次都要统计已有区域数, 区域越多越慢, 这里直接追加合并记录, 耗时与区域数成正比
+ */
+class MergedRegionBuffer {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Sheet sheet;
+    private final XSSFSheet xssfSheet;                          // XSSF时合并记录所在的sheet, HSSF时为null
+    private int[] regions = new int[INITIAL_CAPACITY * 4];     // firstRow, lastRow, firstColumn, lastColumn
+    private int size = 0;
+
+    // 查找SXSSF对应的XSSFSheet时会读取工作簿的sheet列表, 须在创建sheet的线程中构造
+    MergedRegionBuffer(Sheet sheet) {
+        this.sheet = sheet;
+        this.xssfSheet = xssfSheet(sheet);
+    }
+
+    void add(int firstRow, int lastRow, int firstColumn, int lastColumn) {
+        if (firstRow == lastRow && firstColumn == lastColumn) {
+            return;
+        }
+
+        if (size * 4 == regions.length) {
+            regions = Arrays.copyOf(regions, regions.length * 2);
+        }
+
+        int i = size * 4;
+        regions[i] = firstRow;
+        regions[i + 1] = lastRow;
+        regions[i + 2] = firstColumn;
+        regions[i + 3] = lastColumn;
+        size++;
+    }
+
+    // 已缓存的区域数
+    int size() {
+        return size;
+    }
+
+    // 写入sheet并清空, 与写入该sheet的其他操作在同一线程中调用
+    void apply() {
+        if (size == 0) {
+            return;
+        }
+
+        if (xssfSheet != null) {
+            CTWorksheet worksheet = xssfSheet.getCTWorksheet();
+            CTMergeCells mergeCells = worksheet.isSetMergeCells() ? worksheet.getMergeCells() : worksheet.addNewMergeCells();
+            for (int i = 0; i < size * 4; i += 4) {
+                mergeCells.addNewMergeCell().setRef(region(i).formatAsString());
+            }
+            mergeCells.setCount(mergeCells.sizeOfMergeCellArray());
+        } else {
+            for (int i = 0; i < size * 4; i += 4) {
+                sheet.addMergedRegion(region(i));
+            }
+        }
+
+        size = 0;
+    }
+
+    private CellRangeAddress region(int i) {
+        return new CellRangeAddress(regions[i], regions[i + 1], regions[i + 2], regions[i + 3]);
+    }
+
+    // SXSSF的合并区域保存在对应的XSSFSheet中
+    private static XSSFSheet xssfSheet(Sheet sheet) {
+        if (sheet instanceof XSSFSheet) {
+            return (XSSFSheet) sheet;
+        }
+
+        if (sheet.getWorkbook() instanceof SXSSFWorkbook) {
+            SXSSFWorkbook workbook = (SXSSFWorkbook) sheet.getWorkbook();
+            return workbook.getXSSFWorkbook().getSheetAt(workbook.getSheetIndex(sheet));
+        }
+
+        return null;
+    }
+}
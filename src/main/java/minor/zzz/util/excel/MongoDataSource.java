@@ -0,0 +1,277 @@
+package minor.zzz.util.excel;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import minor.zzz.util.excel.ReportTable.Head;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 以MongoDB游标作为ReportTable的流式数据源.
+ *
+ * 叶子表头字段生成查询投影, 分组列生成服务端排序, 文档逐批读取后直接写出, 不在内存中保存整个集合;
+ * 开启预读时由后台线程提前读取后续批次, 网络读取与单元格写出同时进行.
+ *
+ * 服务端先按BSON类型排序(缺失和null < 数字 < 字符串 < ... < 日期), 同类型内数字按数值、字符串按二进制顺序,
+ * 与ReportTable校验分组顺序时按表头类型比较的结果一致的前提是分组字段在集合中只有一种类型, 且与表头类型对应:
+ * 字符串字段用STRING表头, 数字字段用INTEGER或DOUBLE表头, 日期字段用DATE表头.
+ */
+public class MongoDataSource {
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_PREFETCH_BATCHES = 2;
+
+    private final MongoCollection<Document> collection;
+    private Bson filter = new Document();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int prefetchBatches = DEFAULT_PREFETCH_BATCHES;
+    private boolean verifyOrder = false;
+
+    public MongoDataSource(MongoCollection<Document> collection) {
+        if (collection == null) {
+            throw new IllegalArgumentException("collection is null");
+        }
+
+        this.collection = collection;
+    }
+
+    public Bson getFilter() {
+        return filter;
+    }
+
+    // 查询条件
+    public void setFilter(Bson filter) {
+        this.filter = filter == null ? new Document() : filter;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    // 每批从服务端读取的文档数
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    public int getPrefetchBatches() {
+        return prefetchBatches;
+    }
+
+    // 后台预读的最大批数, 为0时不预读, 在导出线程中同步读取
+    public void setPrefetchBatches(int prefetchBatches) {
+        if (prefetchBatches < 0) {
+            throw new IllegalArgumentException("prefetchBatches must not be negative: " + prefetchBatches);
+        }
+
+        this.prefetchBatches = prefetchBatches;
+    }
+
+    public boolean isVerifyOrder() {
+        return verifyOrder;
+    }
+
+    // 是否在导出时校验服务端返回的顺序
+    public void setVerifyOrder(boolean verifyOrder) {
+        this.verifyOrder = verifyOrder;
+    }
+
+    /**
+     * 按表的表头和分组列生成查询, 设置为表的流式数据源; 导出开始时才执行查询, 读完或导出结束时关闭游标
+     */
+    public void bind(ReportTable table) {
+        FindIterable<Document> find = collection.find(filter)
+                .projection(projection(table.getHead()))
+                .batchSize(batchSize);
+
+        if (!table.getGroupField().isEmpty()) {
+            find = find.sort(Sorts.ascending(table.getGroupField()));         // 缺失和null在前, 字符串按二进制顺序
+        }
+
+        table.setDataSource(new DocumentIterator(find, batchSize, prefetchBatches), verifyOrder);
+    }
+
+    // 只查询叶子表头字段
+    static Bson projection(List<Head> head) {
+        List<Head> leaves = new ArrayList<>();
+        for (Head h : head) {
+            h.collectLeaves(leaves);
+        }
+
+        List<String> fields = new ArrayList<>();
+        boolean includeId = false;
+        for (Head leaf : leaves) {
+            fields.add(leaf.getField());
+            includeId = includeId || "_id".equals(leaf.getField());
+        }
+
+        return includeId ? Projections.include(fields) : Projections.fields(Projections.include(fields), Projections.excludeId());
+    }
+
+    /**
+     * 首次读取时才打开游标; 开启预读时由后台线程按批读取放入有界队列
+     */
+    private static final class DocumentIterator implements Iterator<Document>, Closeable {
+        private static final List<Document> END = new ArrayList<>(0);
+        private static final long PUT_WAIT_MILLIS = 100;
+
+        private final FindIterable<Document> find;
+        private final int batchSize;
+        private final int prefetchBatches;
+
+        private MongoCursor<Document> cursor;
+        private BlockingQueue<List<Document>> queue;
+        private Thread prefetcher;
+        private volatile RuntimeException failure;
+
+        private List<Document> batch = Collections.emptyList();
+        private int position = 0;
+        private volatile boolean closed = false;
+
+        DocumentIterator(FindIterable<Document> find, int batchSize, int prefetchBatches) {
+            this.find = find;
+            this.batchSize = batchSize;
+            this.prefetchBatches = prefetchBatches;
+        }
+
+        private void open() {
+            cursor = find.iterator();
+
+            if (prefetchBatches > 0) {
+                queue = new ArrayBlockingQueue<>(prefetchBatches);
+
+                prefetcher = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        prefetch();
+                    }
+                }, "report-mongo-prefetch");
+                prefetcher.setDaemon(true);
+                prefetcher.start();
+            }
+        }
+
+        private void prefetch() {
+            try {
+                List<Document> next = new ArrayList<>(batchSize);
+                while (cursor.hasNext()) {
+                    next.add(cursor.next());
+
+                    if (next.size() == batchSize) {
+                        if (!put(next)) {
+                            return;
+                        }
+                        next = new ArrayList<>(batchSize);
+                    }
+                }
+
+                if (!next.isEmpty() && !put(next)) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                cursor.close();
+            }
+
+            put(END);
+        }
+
+        // 队列满时等待, 导出方已关闭时放弃并返回false
+        private boolean put(List<Document> documents) {
+            try {
+                while (!queue.offer(documents, PUT_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (closed) {
+                        return false;
+                    }
+                }
+
+                return true;
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            }
+
+            if (cursor == null) {
+                open();
+            }
+
+            if (position < batch.size()) {
+                return true;
+            }
+
+            if (queue == null) {
+                if (cursor.hasNext()) {
+                    return true;
+                }
+
+                close();
+                return false;
+            }
+
+            try {
+                batch = queue.take();
+                position = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new IllegalStateException("interrupted while reading from mongodb", e);
+            }
+
+            if (batch == END) {
+                close();
+
+                if (failure != null) {
+                    throw failure;
+                }
+
+                return false;
+            }
+
+            return true;
+        }
+
+        @Override
+        public Document next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return queue == null ? cursor.next() : batch.get(position++);
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            batch = Collections.emptyList();
+
+            if (prefetcher != null) {
+                prefetcher.interrupt();                 // 预读线程退出时关闭游标
+            } else if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+}
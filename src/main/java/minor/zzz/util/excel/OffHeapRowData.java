@@ -0,0 +1,550 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * 按行存储在堆外内存中的报表数据, 列由叶子表头生成.
+ *
+ * 每行定长: 有值位图 + 各列的值; INTEGER/DATE为long(DATE为毫秒时间戳), DOUBLE为double,
+ * STRING为字符串区中的地址(long), 字符串以UTF-8字节保存在字符串区, 与上一行相同的值不重复保存.
+ * STRING列的值按String.valueOf保存, 分组排序按String.compareTo.
+ * 行和字符串都保存在分段的直接缓冲区或映射到临时文件的缓冲区中, 堆内只有列信息, 数据量与GC无关;
+ * 但直接缓冲区的内存要等缓冲区对象被GC回收才释放, 反复创建时应复用实例(clear())或使用临时文件.
+ *
+ * 写入非线程安全; 写入完成后可由多个游标同时读取
+ */
+public class OffHeapRowData implements RowStore, Closeable {
+
+    static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    // 分段的缓冲区, 地址为 段序号 * 段大小 + 段内偏移
+    private static final class Segments {
+        private final int segmentSize;
+        private final FileChannel channel;                  // 映射临时文件时的通道, 直接缓冲区时为null
+        private final List<ByteBuffer> segments = new ArrayList<>();
+
+        Segments(int segmentSize, FileChannel channel) {
+            this.segmentSize = segmentSize;
+            this.channel = channel;
+        }
+
+        ByteBuffer segment(int index) {
+            while (segments.size() <= index) {
+                ByteBuffer segment;
+                if (channel == null) {
+                    segment = ByteBuffer.allocateDirect(segmentSize);
+                } else {
+                    try {
+                        segment = channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * segmentSize, segmentSize);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                segments.add(segment.order(ByteOrder.nativeOrder()));
+            }
+
+            return segments.get(index);
+        }
+
+        void close() throws IOException {
+            segments.clear();
+
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    private final String[] fields;
+    private final DataType[] dataTypes;
+    private final int[] offsets;                            // 各列的值在行内的偏移
+    private final int presentBytes;                         // 行首有值位图的字节数
+    private final Map<String, Integer> field2index = new HashMap<>();
+    private final int rowWidth;
+    private final int rowsPerSegment;
+    private final Segments rows;
+    private final Segments strings;
+    private final long[] lastString;                        // 各STRING列最后写入的字符串地址, 相同的值复用
+    private final String[] lastValue;
+    private long stringEnd = 0;                             // 字符串区已使用的字节数
+    private int size = 0;
+    private int modCount = 0;
+
+    // 数据保存在直接缓冲区, 受-XX:MaxDirectMemorySize限制
+    public OffHeapRowData(List<Head> head) {
+        this(HeaderLayout.compile(head), DEFAULT_SEGMENT_SIZE, null, null);
+    }
+
+    /**
+     * 数据保存在tempDirectory下映射到内存的临时文件中, 由操作系统按需换入换出, 关闭时删除临时文件
+     */
+    public OffHeapRowData(List<Head> head, Path tempDirectory) throws IOException {
+        this(HeaderLayout.compile(head), DEFAULT_SEGMENT_SIZE, openTempFile(tempDirectory), openTempFile(tempDirectory));
+    }
+
+    OffHeapRowData(HeaderLayout layout, int segmentSize, FileChannel rowFile, FileChannel stringFile) {
+        int columnCount = layout.getWidth();
+        this.fields = new String[columnCount];
+        this.dataTypes = new DataType[columnCount];
+        this.offsets = new int[columnCount];
+
+        this.presentBytes = (columnCount + 7) / 8;
+        int width = presentBytes;
+        for (int c = 0; c < columnCount; c++) {
+            fields[c] = layout.getField(c);
+            dataTypes[c] = layout.getDataType(c);
+            offsets[c] = width;
+            width += 8;
+
+            field2index.put(fields[c], c);
+        }
+        this.rowWidth = Math.max(width, 1);
+
+        segmentSize = Math.max(segmentSize, rowWidth);
+        this.rowsPerSegment = segmentSize / rowWidth;
+        this.rows = new Segments(segmentSize, rowFile);
+        this.strings = new Segments(segmentSize, stringFile);
+
+        this.lastString = new long[columnCount];
+        this.lastValue = new String[columnCount];
+    }
+
+    private static FileChannel openTempFile(Path tempDirectory) throws IOException {
+        Path file = Files.createTempFile(tempDirectory, "report-rows-", ".bin");
+        try {
+            return FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int modCount() {
+        return modCount;
+    }
+
+    public int columnCount() {
+        return fields.length;
+    }
+
+    @Override
+    public int columnIndex(String field) {
+        Integer index = field2index.get(field);
+        return index == null ? -1 : index;
+    }
+
+    public String field(int column) {
+        return fields[column];
+    }
+
+    public DataType dataType(int column) {
+        return dataTypes[column];
+    }
+
+    // 行所在的段
+    private ByteBuffer segment(int row) {
+        return rows.segment(row / rowsPerSegment);
+    }
+
+    // 行在段内的偏移
+    private int position(int row) {
+        return (row % rowsPerSegment) * rowWidth;
+    }
+
+    // 清空所有行, 保留已分配的空间
+    public void clear() {
+        size = 0;
+        modCount++;
+        stringEnd = 0;
+        Arrays.fill(lastValue, null);
+    }
+
+    // 追加一个所有列都为空的行, 返回行索引
+    public int addRow() {
+        int row = size;
+
+        ByteBuffer segment = segment(row);
+        int position = position(row);
+        for (int i = 0; i < presentBytes; i++) {
+            segment.put(position + i, (byte) 0);
+        }
+
+        modCount++;
+        return size++;
+    }
+
+    // 按字段名追加一行, 表头中不存在的字段忽略
+    public int addRow(Map<String, Object> data) {
+        int row = addRow();
+
+        int column;
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            column = columnIndex(entry.getKey());
+            if (column >= 0) {
+                setValue(row, column, entry.getValue());
+            }
+        }
+
+        return row;
+    }
+
+    // 从游标当前行追加一行, 游标的列须与本数据的列一致
+    public int addRow(RowCursor cursor) {
+        int row = addRow();
+
+        for (int c = 0; c < fields.length; c++) {
+            if (cursor.isNull(c)) {
+                continue;
+            }
+
+            switch (dataTypes[c]) {
+                case INTEGER:
+                case DATE:
+                    putLong(row, c, cursor.getLong(c));
+                    break;
+                case DOUBLE:
+                    putLong(row, c, Double.doubleToRawLongBits(cursor.getDouble(c)));
+                    break;
+                default:
+                    setString(row, c, cursor.getString(c));
+            }
+        }
+
+        return row;
+    }
+
+    private void setPresent(int row, int column, boolean present) {
+        ByteBuffer segment = segment(row);
+        int index = position(row) + (column >> 3);
+
+        int bits = segment.get(index);
+        bits = present ? bits | (1 << (column & 7)) : bits & ~(1 << (column & 7));
+        segment.put(index, (byte) bits);
+    }
+
+    private void putLong(int row, int column, long value) {
+        segment(row).putLong(position(row) + offsets[column], value);
+        setPresent(row, column, true);
+    }
+
+    private long rawLong(int row, int column) {
+        return segment(row).getLong(position(row) + offsets[column]);
+    }
+
+    private void check(int column, DataType expected1, DataType expected2) {
+        if (dataTypes[column] != expected1 && dataTypes[column] != expected2) {
+            throw new IllegalArgumentException("column " + fields[column] + " is " + dataTypes[column] + ", not " + expected1);
+        }
+    }
+
+    // INTEGER列
+    public void setLong(int row, int column, long value) {
+        if (dataTypes[column] == DataType.DOUBLE) {
+            setDouble(row, column, value);
+            return;
+        }
+
+        check(column, DataType.INTEGER, DataType.DATE);
+        putLong(row, column, value);
+    }
+
+    // DOUBLE列
+    public void setDouble(int row, int column, double value) {
+        check(column, DataType.DOUBLE, DataType.DOUBLE);
+        putLong(row, column, Double.doubleToRawLongBits(value));
+    }
+
+    // DATE列, 毫秒时间戳
+    public void setDate(int row, int column, long millis) {
+        check(column, DataType.DATE, DataType.DATE);
+        putLong(row, column, millis);
+    }
+
+    // STRING列
+    public void setString(int row, int column, String value) {
+        check(column, DataType.STRING, DataType.STRING);
+
+        if (value == null) {
+            setPresent(row, column, false);
+            return;
+        }
+
+        if (!value.equals(lastValue[column])) {
+            lastString[column] = appendString(value);
+            lastValue[column] = value;
+        }
+
+        putLong(row, column, lastString[column]);
+    }
+
+    // 字符串写入字符串区, 不跨段, 返回地址
+    private long appendString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        int segmentSize = strings.segmentSize;
+        if (bytes.length + 4 > segmentSize) {
+            throw new IllegalArgumentException("string is too long: " + bytes.length + " bytes");
+        }
+
+        int offset = (int) (stringEnd % segmentSize);
+        if (offset + 4 + bytes.length > segmentSize) {
+            stringEnd += segmentSize - offset;
+            offset = 0;
+        }
+
+        long address = stringEnd;
+        ByteBuffer segment = strings.segment((int) (address / segmentSize));
+        segment.putInt(offset, bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            segment.put(offset + 4 + i, bytes[i]);
+        }
+        stringEnd += 4 + bytes.length;
+
+        return address;
+    }
+
+    // 读取字符串, buffer不够大时返回新分配的缓冲区
+    private String readString(long address, byte[][] buffer) {
+        int segmentSize = strings.segmentSize;
+        ByteBuffer segment = strings.segment((int) (address / segmentSize));
+        int offset = (int) (address % segmentSize);
+
+        int length = segment.getInt(offset);
+        byte[] bytes = buffer[0];
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+            buffer[0] = bytes;
+        }
+        for (int i = 0; i < length; i++) {
+            bytes[i] = segment.get(offset + 4 + i);
+        }
+
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // 按列类型转换后写入, null表示空值
+    public void setValue(int row, int column, Object value) {
+        if (value == null) {
+            setPresent(row, column, false);
+            return;
+        }
+
+        switch (dataTypes[column]) {
+            case INTEGER:
+            case DATE:
+                if (value instanceof Number) {
+                    putLong(row, column, ((Number) value).longValue());
+                } else if (value instanceof Date) {
+                    putLong(row, column, ((Date) value).getTime());
+                } else if (value instanceof Calendar) {
+                    putLong(row, column, ((Calendar) value).getTimeInMillis());
+                } else if (value instanceof String && dataTypes[column] == DataType.INTEGER) {
+                    putLong(row, column, Long.parseLong((String) value));
+                } else {
+                    throw new IllegalArgumentException("column " + fields[column] + " is " + dataTypes[column]
+                            + ", can not accept " + value.getClass().getName());
+                }
+                break;
+            case DOUBLE:
+                if (value instanceof Number) {
+                    setDouble(row, column, ((Number) value).doubleValue());
+                } else if (value instanceof String) {
+                    setDouble(row, column, Double.parseDouble((String) value));
+                } else {
+                    throw new IllegalArgumentException("column " + fields[column] + " is DOUBLE, can not accept "
+                            + value.getClass().getName());
+                }
+                break;
+            default:
+                setString(row, column, String.valueOf(value));
+        }
+    }
+
+    public boolean isNull(int row, int column) {
+        return (segment(row).get(position(row) + (column >> 3)) & (1 << (column & 7))) == 0;
+    }
+
+    public long getLong(int row, int column) {
+        check(column, DataType.INTEGER, DataType.DATE);
+        return rawLong(row, column);
+    }
+
+    public double getDouble(int row, int column) {
+        check(column, DataType.DOUBLE, DataType.DOUBLE);
+        return Double.longBitsToDouble(rawLong(row, column));
+    }
+
+    public String getString(int row, int column) {
+        check(column, DataType.STRING, DataType.STRING);
+        return readString(rawLong(row, column), new byte[][]{new byte[64]});
+    }
+
+    @Override
+    public RowCursor cursor(int[] order) {
+        return new Cursor(order);
+    }
+
+    // 游标各自保存读取位置和字符串缓存, 不修改缓冲区的状态, 多个游标可同时读取
+    private final class Cursor implements RowCursor {
+        private final int[] order;
+        private final int end;                              // 创建游标时的行数, 之后追加的行不读取
+        private final long[] stringAddress = new long[fields.length];     // 上一次读取的字符串地址, 相同时不再解码
+        private final String[] stringValue = new String[fields.length];
+        private final byte[][] buffer = {new byte[64]};
+        private int position = -1;
+        private ByteBuffer segment;
+        private int base;
+
+        Cursor(int[] order) {
+            this.order = order;
+            this.end = order == null ? size : order.length;
+        }
+
+        @Override
+        public int columnCount() {
+            return fields.length;
+        }
+
+        @Override
+        public String field(int column) {
+            return fields[column];
+        }
+
+        @Override
+        public DataType dataType(int column) {
+            return dataTypes[column];
+        }
+
+        @Override
+        public boolean next() {
+            if (position + 1 >= end) {
+                return false;
+            }
+
+            position++;
+            int row = order == null ? position : order[position];
+            segment = segment(row);
+            base = position(row);
+            return true;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return (segment.get(base + (column >> 3)) & (1 << (column & 7))) == 0;
+        }
+
+        @Override
+        public long getLong(int column) {
+            return segment.getLong(base + offsets[column]);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return Double.longBitsToDouble(segment.getLong(base + offsets[column]));
+        }
+
+        @Override
+        public String getString(int column) {
+            long address = segment.getLong(base + offsets[column]);
+            if (stringValue[column] == null || stringAddress[column] != address) {
+                stringValue[column] = readString(address, buffer);
+                stringAddress[column] = address;
+            }
+
+            return stringValue[column];
+        }
+    }
+
+    /**
+     * 按keys列依次排序后的行顺序, 空值在前, 相等的行保持添加顺序; 排序期间在堆内取出各排序列的值
+     */
+    @Override
+    public int[] sortedOrder(int[] keys) {
+        int[][] ranks = new int[keys.length][];
+        int[] cardinality = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            ranks[i] = new int[size];
+            cardinality[i] = rank(keys[i], ranks[i]);
+        }
+
+        return GroupKeySorter.order(ranks, cardinality, size);
+    }
+
+    private int rank(int column, int[] ranks) {
+        BitSet present = new BitSet(size);
+        for (int row = 0; row < size; row++) {
+            if (!isNull(row, column)) {
+                present.set(row);
+            }
+        }
+
+        switch (dataTypes[column]) {
+            case INTEGER:
+            case DATE: {
+                long[] values = new long[size];
+                for (int row = present.nextSetBit(0); row >= 0; row = present.nextSetBit(row + 1)) {
+                    values[row] = rawLong(row, column);
+                }
+
+                return GroupKeySorter.rankLongs(values, present, size, ranks);
+            }
+            case DOUBLE: {
+                double[] values = new double[size];
+                for (int row = present.nextSetBit(0); row >= 0; row = present.nextSetBit(row + 1)) {
+                    values[row] = Double.longBitsToDouble(rawLong(row, column));
+                }
+
+                return GroupKeySorter.rankDoubles(values, present, size, ranks);
+            }
+            default: {
+                // 相同地址的字符串只解码一次
+                String[] values = new String[size];
+                byte[][] buffer = {new byte[64]};
+                long last = -1, address;
+                String value = null;
+                for (int row = present.nextSetBit(0); row >= 0; row = present.nextSetBit(row + 1)) {
+                    address = rawLong(row, column);
+                    if (address != last) {
+                        value = readString(address, buffer);
+                        last = address;
+                    }
+                    values[row] = value;
+                }
+
+                return GroupKeySorter.rankStrings(values, size, ranks);
+            }
+        }
+    }
+
+    // 释放对缓冲区的引用, 映射临时文件时删除临时文件; 之后不能再读写.
+    // 直接缓冲区的内存在缓冲区被GC回收时才释放, 多次导出时可用clear()复用同一个实例已分配的空间
+    @Override
+    public void close() throws IOException {
+        size = 0;
+
+        try {
+            rows.close();
+        } finally {
+            strings.close();
+        }
+    }
+}
@@ -1,17 +1,32 @@
 package minor.zzz.util.excel;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.hssf.usermodel.*;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
-
-import java.io.FileOutputStream;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Created by zhouzb on 2017/3/8.
  *
- * 非线程安全
+ * 非线程安全: 设置表头、数据期间不能并发访问; 设置完成后导出只读取数据, 同一实例可在多个线程中同时导出
  */
 public class ReportTable {
 
@@ -19,6 +34,8 @@ public class ReportTable {
         private String field;               // 列字段field
         private int columnIndex;            // 列索引
         private DataType dataType;          // 数据类型
+        private String format;              // excel格式
+        private Aggregation aggregation;    // 聚合方式
     }
 
     public static class Title {
@@ -42,8 +59,11 @@ public class ReportTable {
         private int rowIndex = 0;                                   // 表头相对行索引
         private int columnIndex = 0;                                // 表头相对列索引
         private DataType dataType = DataType.STRING;                // 表头数据类型
+        private String format;                                      // 数据的excel格式, 为null时使用数据类型的默认格式
+        private Aggregation aggregation;                            // 小计、合计的聚合方式, 为null时不聚合
 
         private List<Head> children = new ArrayList<Head>();        // 子表头
+        private Head parent;                                        // 父表头, 第一层表头为null
 
         public Head() {
             this(StringUtils.EMPTY, StringUtils.EMPTY);
@@ -53,6 +73,18 @@ public class ReportTable {
             this(field, name, new ArrayList<Head>());
         }
 
+        public Head(String field, String name, DataType dataType) {
+            this(field, name);
+
+            setDataType(dataType);
+        }
+
+        public Head(String field, String name, DataType dataType, String format) {
+            this(field, name, dataType);
+
+            setFormat(format);
+        }
+
         public Head(String field, String name, List<Head> children) {
             this.field = field;
             this.name = name;
@@ -66,23 +98,57 @@ public class ReportTable {
             }
         }
 
+        public String getField() {
+            return field;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public DataType getDataType() {
+            return dataType;
+        }
+
+        public void setDataType(DataType dataType) {
+            this.dataType = dataType == null ? DataType.STRING : dataType;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        // excel格式, 如"#,##0.00"、"yyyy-mm-dd hh:mm"; 同一格式在工作簿内只创建一个样式
+        public void setFormat(String format) {
+            this.format = StringUtils.isBlank(format) ? null : format;
+        }
+
+        public Aggregation getAggregation() {
+            return aggregation;
+        }
+
+        // 叶子表头的聚合方式, 在分组结束时写入小计行, 表体最后写入合计行
+        public void setAggregation(Aggregation aggregation) {
+            this.aggregation = aggregation;
+        }
+
         public boolean isGroup() {
             return !CollectionUtils.isEmpty(children);
         }
 
-        private int deepestLevel() {
-            int depth = 1;
+        // 按列顺序收集叶子表头
+        void collectLeaves(List<Head> leaves) {
             if (isGroup()) {
-                int max = 0;
                 for (Head child : children) {
-                    if (max < child.deepestLevel()) {
-                        max = child.deepestLevel();
-                    }
+                    child.collectLeaves(leaves);
                 }
-                depth = depth + max;
+            } else {
+                leaves.add(this);
             }
+        }
 
-            return depth;
+        List<Head> children() {
+            return children;
         }
 
         private void updateRowIndex(int start) {
@@ -94,24 +160,6 @@ public class ReportTable {
             }
         }
 
-        private void updateSelf(Head child) {
-
-            int childRowSpan = child.deepestLevel();
-            int childColumnSpan = child.columnSpan;
-
-            if (childRowSpan < this.rowSpan) {
-
-            } else {
-                this.rowSpan = childRowSpan + 1;
-            }
-
-            if (CollectionUtils.isEmpty(this.children)) {
-                this.columnSpan = childColumnSpan;
-            } else {
-                this.columnSpan += childColumnSpan;
-            }
-        }
-
         private void updateChild(Head child) {
             Head closetSiblings = null;
             if (CollectionUtils.isEmpty(this.children)) {
@@ -124,12 +172,28 @@ public class ReportTable {
             child.updateRowIndex(this.rowIndex);
         }
 
+        // 跨列数、跨行数沿父表头向上更新, 每次只访问祖先节点, 不再遍历子树
+        private void grow(int columnDelta, int childRowSpan) {
+            Head h = this;
+            while (h != null && (columnDelta != 0 || h.rowSpan <= childRowSpan)) {
+                h.columnSpan += columnDelta;
+                h.rowSpan = Math.max(h.rowSpan, childRowSpan + 1);
+
+                childRowSpan = h.rowSpan;
+                h = h.parent;
+            }
+        }
+
         public void addChild(Head child) {
-            updateSelf(child);
+            // 叶子表头变为分组时, 跨列数由1变为子表头的跨列数
+            int columnDelta = isGroup() ? child.columnSpan : child.columnSpan - this.columnSpan;
 
             updateChild(child);
 
             this.children.add(child);
+            child.parent = this;
+
+            grow(columnDelta, child.rowSpan);
         }
 
         @Override
@@ -152,25 +216,102 @@ public class ReportTable {
     }
 
 
+    // 合计设置, 只在表头中有聚合列时生效
     public static class Footer {
+        private boolean subtotal = true;                            // 每个分组结束时是否写小计行
+        private boolean grandTotal = true;                          // 表体最后是否写合计行
+        private String subtotalLabel = "小计";
+        private String grandTotalLabel = "合计";
+
+        public boolean isSubtotal() {
+            return subtotal;
+        }
+
+        public void setSubtotal(boolean subtotal) {
+            this.subtotal = subtotal;
+        }
+
+        public boolean isGrandTotal() {
+            return grandTotal;
+        }
 
+        public void setGrandTotal(boolean grandTotal) {
+            this.grandTotal = grandTotal;
+        }
+
+        public String getSubtotalLabel() {
+            return subtotalLabel;
+        }
+
+        public void setSubtotalLabel(String subtotalLabel) {
+            this.subtotalLabel = subtotalLabel == null ? StringUtils.EMPTY : subtotalLabel;
+        }
+
+        public String getGrandTotalLabel() {
+            return grandTotalLabel;
+        }
+
+        public void setGrandTotalLabel(String grandTotalLabel) {
+            this.grandTotalLabel = grandTotalLabel == null ? StringUtils.EMPTY : grandTotalLabel;
+        }
     }
 
     public enum DataType {
         STRING, INTEGER, DOUBLE, DATE;
     }
 
+    // 小计、合计的聚合方式; STRING列只支持COUNT, DATE列不支持SUM、AVG
+    public enum Aggregation {
+        SUM, COUNT, MIN, MAX, AVG;
+    }
+
     public static class Data extends HashMap<String, Object> {
 
     }
 
+    public enum ExcelType {
+        XLS,                // HSSF, 全部行保存在内存中, 单sheet最多65536行
+        XLSX;               // SXSSF, 超出窗口的行写入临时文件, 内存占用与总行数无关
+    }
+
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+    private static final long DEFAULT_SORT_MEMORY_BUDGET = 64L * 1024 * 1024;
+    private static final long DEFAULT_SHEET_BUFFER_ROWS = 1L << 20;
+
+    private static final Iterator<Map<String, Object>> EXHAUSTED_SOURCE = new Iterator<Map<String, Object>>() {
+        @Override
+        public boolean hasNext() {
+            throw new IllegalStateException("data source has already been exported");
+        }
+
+        @Override
+        public Map<String, Object> next() {
+            throw new IllegalStateException("data source has already been exported");
+        }
+    };
+
     private Title title;
     private List<Head> head = new ArrayList<>();
-    private Footer footer;
+    private volatile HeaderLayout headerLayout;             // head编译后的布局, 导出时按需编译, setHead时清空
+    private Footer footer = new Footer();
     private List<Data> data = new ArrayList<>();
+    private RowStore rowStore;                              // 列式或堆外数据
+    private int[] rowOrder;                                 // rowStore按分组列排序后的行顺序, 未分组时为null
+    private int rowOrderModCount;                           // 排序时rowStore的modCount, 之后追加、清空过行时重新排序
+    private Iterator<? extends Map<String, Object>> dataSource;
+    private boolean dataSourceSorted = true;               // 流式数据源是否已按分组列排序
+    private boolean verifyDataSourceOrder = false;
+    private long sortMemoryBudget = DEFAULT_SORT_MEMORY_BUDGET;
+    private Path sortTempDirectory;
     private List<String> groupField = new ArrayList<>();
     private boolean dataChanged = false;
     private boolean groupFieldChanged = false;
+    private ExcelType excelType = ExcelType.XLS;
+    private int rowAccessWindowSize = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+    private int sheetRowLimit = 0;                          // 每个sheet的最大数据行数, 为0时只受格式限制
+    private int sheetParallelism = 1;
+    private long sheetBufferRows = DEFAULT_SHEET_BUFFER_ROWS;   // 并行生成sheet时缓存的最大行数
+    private ExportListener exportListener = ExportListener.NONE;
 
     public Title getTitle() {
         return this.title;
@@ -184,11 +325,18 @@ public class ReportTable {
         return footer;
     }
 
+    public void setFooter(Footer footer) {
+        this.footer = footer == null ? new Footer() : footer;
+    }
+
+    // 已按分组列排序的数据; 排序在导出或第一次读取时进行
     public List<Data> getData() {
         if (CollectionUtils.isEmpty(this.data)) {
             return new ArrayList<Data>();
         }
 
+        sortedRawData();
+
         return this.data;
     }
 
@@ -210,8 +358,6 @@ public class ReportTable {
             }
 
             this.groupField = groupField;
-
-            sortedRawData();
         }
 
     }
@@ -227,303 +373,1714 @@ public class ReportTable {
             }
 
             this.data = data;
-
-            sortedRawData();
+            this.rowStore = null;
+            this.rowOrder = null;
+            this.dataSource = null;
         }
     }
 
-    public void setHead(List<Head> head) {
-        if (CollectionUtils.isEmpty(head)) {
-            head = new ArrayList<Head>();
+    // 列式数据, 导出时直接读取, 不再经过Data
+    public void setData(ColumnarData data) {
+        setRowStore(data);
+    }
+
+    public ColumnarData getColumnarData() {
+        return rowStore instanceof ColumnarData ? (ColumnarData) rowStore : null;
+    }
+
+    /**
+     * 堆外数据, 导出时以游标直接读取; 数据不在堆内, 适合百万行级别需要分组排序、合并的报表.
+     * 导出完成后由调用方关闭
+     */
+    public void setData(OffHeapRowData data) {
+        setRowStore(data);
+    }
+
+    public OffHeapRowData getOffHeapData() {
+        return rowStore instanceof OffHeapRowData ? (OffHeapRowData) rowStore : null;
+    }
+
+    private void setRowStore(RowStore store) {
+
+        if (this.rowStore != store) {
+            dataChanged = true;
+
+            this.rowStore = store;
+            this.rowOrder = null;
+            this.data = new ArrayList<Data>();
+            this.dataSource = null;
         }
+    }
 
-        this.head = head;
+    /**
+     * 流式数据源, 导出时逐行读取并写出, 不在内存中保存数据, 只能导出一次.
+     *
+     * 数据须已按分组列排好序(如数据库查询已按分组列排序), 不再排序; 分组合并在写出时一次遍历完成.
+     * 空值在前; STRING列按String.compareTo, 即数据库对字符串列ORDER BY的顺序, INTEGER、DOUBLE、DATE列按值
+     */
+    public void setDataSource(Iterator<? extends Map<String, Object>> source) {
+        setDataSource(source, false);
     }
 
-    // 排序
-    private void sortedRawData() {
-        if (CollectionUtils.isEmpty(this.data) || CollectionUtils.isEmpty(groupField)) {
-            return;
+    // verifyOrder为true时导出过程中校验数据顺序, 未按分组列排序时抛出IllegalStateException
+    public void setDataSource(Iterator<? extends Map<String, Object>> source, boolean verifyOrder) {
+        if (source == null) {
+            throw new IllegalArgumentException("source is null");
         }
 
-        if (this.dataChanged || this.groupFieldChanged) {
+        this.dataSource = source;
+        this.dataSourceSorted = true;
+        this.verifyDataSourceOrder = verifyOrder;
+        this.data = new ArrayList<Data>();
+        this.rowStore = null;
+        this.rowOrder = null;
+    }
 
-            Collections.sort(this.data, new Comparator<Data>() {
-                @Override
-                public int compare(Data data1, Data data2) {
-                    Object v1, v2;
-                    String field;
-                    int result = 0;
-                    Comparable cv1, cv2;
-                    for (int i = 0; i < groupField.size(); i ++) {
-                        field = groupField.get(i);
-                        v1 = data1.get(field);
-                        v2 = data2.get(field);
-
-                        cv1 = (Comparable)v1;
-                        cv2 = (Comparable)v2;
-
-                        if (cv1 == null && cv2 == null) {
-                            result = 0;
-                        } else if (cv1 == null && cv2 != null) {
-                            result = -1;
-                        } else if (cv1 != null && cv2 == null) {
-                            result = 1;
-                        } else {
-                            result = cv1.compareTo(cv2);
-                        }
+    public void setDataSource(Stream<? extends Map<String, Object>> source) {
+        setDataSource(source.iterator(), false);
+    }
 
-                        if (result != 0) {
-                            break;
-                        }
-                    }
+    public void setDataSource(Stream<? extends Map<String, Object>> source, boolean verifyOrder) {
+        setDataSource(source.iterator(), verifyOrder);
+    }
 
-                    return result;
-                }
-            });
+    /**
+     * 未排序的流式数据源, 只能导出一次.
+     *
+     * 导出时按分组列外部排序: 数据按内存预算分块排序后写入临时文件, 再多路归并逐行写出,
+     * 结果与内存排序一致; 数据未超出内存预算时不写临时文件
+     */
+    public void setUnsortedDataSource(Iterator<? extends Map<String, Object>> source) {
+        setDataSource(source, false);
 
-            dataChanged = false;
-            groupFieldChanged = false;
-        }
+        this.dataSourceSorted = false;
     }
 
-    // 导出excel
-    public void exportExcel() {
-        ExcelGenerator.setReportTable(this);
-        ExcelGenerator.generate();
+    public void setUnsortedDataSource(Stream<? extends Map<String, Object>> source) {
+        setUnsortedDataSource(source.iterator());
     }
 
-    private static class ExcelGenerator {
-        private static ReportTable table;
+    public long getSortMemoryBudget() {
+        return sortMemoryBudget;
+    }
 
-        private static void setReportTable(ReportTable reportTable) {
-            table = reportTable;
+    // 外部排序时每块数据的内存预算(字节, 估算值)
+    public void setSortMemoryBudget(long sortMemoryBudget) {
+        if (sortMemoryBudget <= 0) {
+            throw new IllegalArgumentException("sortMemoryBudget must be positive: " + sortMemoryBudget);
         }
 
-        private static int nextRowNum(HSSFSheet sheet) {
-            int rowNum = 0;
+        this.sortMemoryBudget = sortMemoryBudget;
+    }
+
+    public Path getSortTempDirectory() {
+        return sortTempDirectory;
+    }
 
-            int firstRowNum = sheet.getFirstRowNum();
-            int lastRowNum = sheet.getLastRowNum();
+    // 外部排序临时文件目录, 为null时使用java.io.tmpdir
+    public void setSortTempDirectory(Path sortTempDirectory) {
+        this.sortTempDirectory = sortTempDirectory;
+    }
 
-            if (firstRowNum == lastRowNum) {
-                rowNum = 0;
-            } else {
-                rowNum = lastRowNum + 1;
+    // 导出用的数据游标, 流式数据源被取走后不能再次导出
+    private synchronized RowCursor openCursor() throws IOException {
+        if (this.dataSource != null) {
+            Iterator<? extends Map<String, Object>> source = this.dataSource;
+            this.dataSource = EXHAUSTED_SOURCE;
+
+            RowCursor cursor = new MapRowCursor(getHead(), source);
+
+            int[] keys = groupColumns(cursor);
+            if (!this.dataSourceSorted && keys.length > 0) {
+                Path tempDirectory = this.sortTempDirectory != null
+                        ? this.sortTempDirectory : Paths.get(System.getProperty("java.io.tmpdir"));
+
+                return new ExternalSorter(getHead(), keys, this.sortMemoryBudget, tempDirectory).sort(cursor);
             }
 
-            return rowNum;
+            return cursor;
+        }
+
+        // 设置数据、分组列时不排序, 在导出中排序, 耗时计入导出的SORT阶段
+        sortedRawData();
+
+        if (this.rowStore != null) {
+            return this.rowStore.cursor(this.rowOrder);
         }
 
-        private static int deepestNumOfHead() {
-            int depth = -1;
+        return new MapRowCursor(getHead(), getData().iterator());
+    }
+
+    // 分组列在游标中的索引, 按分组层级排列
+    private int[] groupColumns(RowCursor cursor) {
+        List<Integer> keys = new ArrayList<>();
 
-            for (Head head : table.getHead()) {
-                if (depth < head.rowSpan) {
-                    depth = head.rowSpan;
+        for (String field : getGroupField()) {
+            for (int c = 0; c < cursor.columnCount(); c++) {
+                if (cursor.field(c).equals(field)) {
+                    keys.add(c);
+                    break;
                 }
             }
+        }
+
+        return ArrayUtils.toPrimitive(keys.toArray(new Integer[keys.size()]));
+    }
 
-            return depth;
+    // 叶子表头对应的游标列, 游标中不存在时为-1
+    private static int[] leafColumns(HeaderLayout layout, RowCursor cursor) {
+        Map<String, Integer> field2data = new HashMap<>();
+        for (int c = 0; c < cursor.columnCount(); c++) {
+            field2data.put(cursor.field(c), c);
         }
 
-        private static void mergeCell(HSSFSheet sheet, int startRow, int endRow, int startColumn, int endColumn) {
-            CellRangeAddress cellRangeAddress = new CellRangeAddress(startRow, endRow, startColumn, endColumn);
-            sheet.addMergedRegion(cellRangeAddress);
+        int[] dataColumn = new int[layout.getWidth()];
+        Integer index;
+        for (int k = 0; k < dataColumn.length; k++) {
+            index = field2data.get(layout.getField(k));
+            dataColumn[k] = index == null ? -1 : index;
         }
 
-        private static void generateTitle(HSSFSheet sheet) {
-            HSSFRow row = sheet.createRow(0);
-            int colNum = 0;
-            HSSFCell cell = null;
-            if (StringUtils.isNotBlank(table.getTitle().getMainTitle())) {
-                cell = row.createCell(colNum++);
-                cell.setCellValue(table.getTitle().getMainTitle());
-            }
+        return dataColumn;
+    }
 
-            if (StringUtils.isNotBlank(table.getTitle().getSubTitle())) {
-                cell = row.createCell(colNum++);
-                cell.setCellValue(table.getTitle().getSubTitle());
-            }
+    // 分组列是否需要校验顺序
+    private boolean verifyOrder() {
+        return this.dataSource != null && this.dataSourceSorted && this.verifyDataSourceOrder;
+    }
+
+    public ExcelType getExcelType() {
+        return excelType;
+    }
+
+    // 导出格式
+    public void setExcelType(ExcelType excelType) {
+        this.excelType = excelType == null ? ExcelType.XLS : excelType;
+    }
+
+    public int getRowAccessWindowSize() {
+        return rowAccessWindowSize;
+    }
+
+    // XLSX导出时内存中保留的行数, 超出部分刷写到磁盘
+    public void setRowAccessWindowSize(int rowAccessWindowSize) {
+        if (rowAccessWindowSize <= 0) {
+            throw new IllegalArgumentException("rowAccessWindowSize must be positive: " + rowAccessWindowSize);
         }
 
-        private static void generateHead(HSSFSheet sheet,
-                                         HSSFCellStyle cellStyle,
-                                         List<Head> head,
-                                         Map<Integer, HSSFRow> rowMap,
-                                         Map<String, Column> field2column,
-                                         int rowStart, int columnStart) {
-            int colSpan, rowIndex;
-            HSSFRow row;
-            HSSFCell cell;
-            Column column;
-            for (Head h : head) {
-                colSpan = h.columnSpan;
+        this.rowAccessWindowSize = rowAccessWindowSize;
+    }
 
-                rowIndex = h.rowIndex;
+    public int getSheetRowLimit() {
+        return sheetRowLimit;
+    }
 
-                row = rowMap.get(rowIndex);
+    /**
+     * 每个sheet最多写入的数据行数(不含表头), 超出时分到下一个sheet, 每个sheet重复表头;
+     * 为0时只受格式限制(XLS为65536行, XLSX为1048576行, 均含表头)
+     */
+    public void setSheetRowLimit(int sheetRowLimit) {
+        if (sheetRowLimit < 0) {
+            throw new IllegalArgumentException("sheetRowLimit must not be negative: " + sheetRowLimit);
+        }
 
-                if (row == null) {
-                    row = sheet.createRow(rowStart + rowIndex);
-                    rowMap.put(rowIndex, row);
-                }
+        this.sheetRowLimit = sheetRowLimit;
+    }
 
-                cell = row.createCell(columnStart);
-                cell.setCellValue(h.name);
-                cell.setCellStyle(cellStyle);
+    public int getSheetParallelism() {
+        return sheetParallelism;
+    }
 
-                if (h.isGroup()) {
-                    generateHead(sheet, cellStyle, h.children, rowMap, field2column, rowStart, columnStart);
+    /**
+     * 同时生成的sheet数, 默认为1: 在导出线程中逐行写入, 最多缓存当前sheet放得下的最外层分组, 内存占用与总行数无关.
+     * 大于1时每个sheet的数据先在堆内缓存, 再由工作线程写入, 最多缓存parallelism + 1个sheet的数据,
+     * 同时不超过sheetBufferRows行(单个sheet超出时除外); XLSX每个sheet可达百万行, 调大前应估算堆内存
+     */
+    public void setSheetParallelism(int sheetParallelism) {
+        if (sheetParallelism <= 0) {
+            throw new IllegalArgumentException("sheetParallelism must be positive: " + sheetParallelism);
+        }
 
-                    mergeCell(sheet, rowStart + h.rowIndex, rowStart + h.rowIndex, columnStart, columnStart + colSpan - 1);
-                } else {
-                    column = new Column();
-                    column.field = h.field;
-                    column.columnIndex = columnStart;
-                    column.dataType = h.dataType;
+        this.sheetParallelism = sheetParallelism;
+    }
+
+    public long getSheetBufferRows() {
+        return sheetBufferRows;
+    }
+
+    /**
+     * 并行生成sheet时缓存的最大数据行数, 默认1048576. 已缓存的行数加上下一个sheet的行数超出时,
+     * 等待工作线程写完较早的sheet; 小于每个sheet的行数时不再并行
+     */
+    public void setSheetBufferRows(long sheetBufferRows) {
+        if (sheetBufferRows <= 0) {
+            throw new IllegalArgumentException("sheetBufferRows must be positive: " + sheetBufferRows);
+        }
+
+        this.sheetBufferRows = sheetBufferRows;
+    }
+
+    public ExportListener getExportListener() {
+        return exportListener;
+    }
+
+    // 导出过程的监听器, 为null时不统计
+    public void setExportListener(ExportListener exportListener) {
+        this.exportListener = exportListener == null ? ExportListener.NONE : exportListener;
+    }
+
+    // 表头; 设置后再修改表头时需重新调用setHead
+    public void setHead(List<Head> head) {
+        if (CollectionUtils.isEmpty(head)) {
+            head = new ArrayList<Head>();
+        }
+
+        this.head = head;
+        this.headerLayout = null;
+    }
+
+    // 已编译的表头布局, 可通过setHeaderLayout在多个实例间复用
+    public HeaderLayout getHeaderLayout() {
+        HeaderLayout layout = this.headerLayout;
+        if (layout == null) {
+            layout = HeaderLayout.compile(getHead());
+            this.headerLayout = layout;
+        }
+
+        return layout;
+    }
+
+    // 使用已编译的表头布局, 导出时不再编译表头
+    public void setHeaderLayout(HeaderLayout headerLayout) {
+        if (headerLayout == null) {
+            throw new IllegalArgumentException("headerLayout is null");
+        }
+
+        this.head = new ArrayList<>(headerLayout.getHead());
+        this.headerLayout = headerLayout;
+    }
+
+    // 排序
+    // 数据或分组列变化后第一次导出(或getData)时排序, 多个线程同时导出时只排序一次
+    private synchronized void sortedRawData() {
+        if (this.rowStore != null) {
+            sortedRowStore();
+            return;
+        }
+
+        if (CollectionUtils.isEmpty(this.data) || CollectionUtils.isEmpty(groupField)) {
+            return;
+        }
+
+        if (this.dataChanged || this.groupFieldChanged) {
+            // 每个分组列的值只取出一次, 按表头数据类型计算排名后并行排序, 相等的行保持原顺序
+            HeaderLayout layout = getHeaderLayout();
 
-                    field2column.put(h.field, column);
+            int size = this.data.size();
+            Data[] rows = this.data.toArray(new Data[size]);
 
-                    mergeCell(sheet, rowStart + h.rowIndex, rowStart + deepestNumOfHead() - 1, columnStart, columnStart + colSpan - 1);
+            int[][] ranks = new int[groupField.size()][];
+            int[] cardinality = new int[groupField.size()];
+            Object[] values = new Object[size];
+            String field;
+            DataType dataType;
+            int index;
+            for (int i = 0; i < groupField.size(); i ++) {
+                field = groupField.get(i);
+                for (int row = 0; row < size; row ++) {
+                    values[row] = rows[row].get(field);
                 }
 
-                columnStart += colSpan;
+                index = layout.columnOf(field);
+                dataType = index < 0 ? DataType.STRING : layout.getDataType(index);
+                ranks[i] = new int[size];
+                cardinality[i] = GroupKeySorter.rankValues(values, dataType, size, ranks[i]);
+            }
+
+            ListIterator<Data> iterator = this.data.listIterator();
+            for (int row : GroupKeySorter.order(ranks, cardinality, size)) {
+                iterator.next();
+                iterator.set(rows[row]);
             }
+
+            dataChanged = false;
+            groupFieldChanged = false;
+        }
+    }
+
+    // 列式、堆外数据不移动数据, 只生成排序后的行顺序
+    private void sortedRowStore() {
+        RowStore columns = this.rowStore;
+        if (!this.dataChanged && !this.groupFieldChanged && columns.modCount() == this.rowOrderModCount) {
+            return;
         }
 
-//        private static Map<String, Column> createHead(HSSFSheet sheet, HSSFCellStyle cellStyle) {
-//            int headStart = nextRowNum(sheet);
-//
-//            Map<Integer, HSSFRow> rowMap = new HashMap<>();
-//
-//            Map<String, Column> field2column = new HashMap<>();
-//
-//            generateHead(sheet, cellStyle, table.getHead(), rowMap, field2column, headStart, 0);
-//
-//            return field2column;
-//        }
+        List<Integer> keyList = new ArrayList<>();
+        int index;
+        for (String field : getGroupField()) {
+            index = columns.columnIndex(field);
+            if (index >= 0) {
+                keyList.add(index);
+            }
+        }
 
-        private static void generateBody(HSSFSheet sheet, Map<String, Column> field2column, List<Data> data, final List<String> groupField) {
-            int dataRowStart = nextRowNum(sheet);
+        if (keyList.isEmpty() || columns.size() == 0) {
+            this.rowOrder = null;
+        } else {
+            this.rowOrder = columns.sortedOrder(ArrayUtils.toPrimitive(keyList.toArray(new Integer[keyList.size()])));
+        }
+        this.rowOrderModCount = columns.modCount();
 
-            int rowNum = dataRowStart;
+        dataChanged = false;
+        groupFieldChanged = false;
+    }
 
-            Map<String, Object> groupFieldValue = new HashMap<>();
-            Map<String, Integer> groupFieldRow = new HashMap<>();
+    // 导出html表格, 不关闭传入的Writer
+    public void exportHtml(Writer writer) throws IOException {
+        exportHtml(writer, new ExportRecorder(exportListener, "HTML"));
+    }
 
-            String field;
-            Object value, groupValue;
-            Column column;
-            HSSFRow row;
-            HSSFCell cell;
+    // 导出UTF-8编码的html表格, 不关闭传入的输出流
+    public void exportHtml(OutputStream out) throws IOException {
+        ExportRecorder recorder = new ExportRecorder(exportListener, "HTML");
 
-            for (Data _d : data) {
+        exportHtml(new OutputStreamWriter(recorder.count(out), StandardCharsets.UTF_8), recorder);
+    }
 
-                row = sheet.createRow(rowNum);
+    private void exportHtml(Writer writer, ExportRecorder recorder) throws IOException {
+        try {
+            BufferedWriter out = new BufferedWriter(writer, EXPORT_BUFFER_SIZE);
 
-                for (Map.Entry<String, Object> entry : _d.entrySet()) {
-                    field = entry.getKey();
-                    value = entry.getValue();
+            new HtmlTableGenerator(out, recorder).generate();
 
-                    column = field2column.get(field);
+            out.flush();
+        } catch (IOException | RuntimeException | Error e) {
+            recorder.failed(e);
+            throw e;
+        }
 
-                    cell = row.createCell(column.columnIndex);
-                    cell.setCellValue(String.valueOf(value));
+        recorder.completed();
+    }
 
-                    if (table.getGroupField().contains(field)) {
-                        if (!groupFieldValue.containsKey(field)) {
-                            groupFieldValue.put(field, value);
-                            groupFieldRow.put(field, rowNum);
-                        } else {
-                            groupValue = groupFieldValue.get(field);
+    // 导出csv(逗号分隔, UTF-8), 不关闭传入的输出流
+    public void exportCsv(OutputStream out) throws IOException {
+        exportDelimited(out, ',', false);
+    }
 
-                            if (groupValue != null) {
-                                if (!groupValue.equals(value)) {
-                                    mergeCell(sheet, groupFieldRow.get(field), rowNum - 1, column.columnIndex, column.columnIndex);
+    // 导出tsv(制表符分隔, UTF-8), 不关闭传入的输出流
+    public void exportTsv(OutputStream out) throws IOException {
+        exportDelimited(out, '\t', false);
+    }
 
-                                    groupFieldValue.put(field, value);
-                                    groupFieldRow.put(field, rowNum);
-                                }
-                            } else {
-                                groupFieldValue.put(field, value);
-                                groupFieldRow.put(field, rowNum);
-                            }
-                        }
-                    }
-                }
+    /**
+     * 导出分隔符分隔的UTF-8文本: 第一行为叶子表头, 之后每行一条数据, 不合并分组; 不关闭传入的输出流.
+     * 含分隔符、引号或换行的值按RFC 4180加引号, 行以CRLF结束
+     *
+     * @param gzip 是否以gzip格式压缩输出
+     */
+    public void exportDelimited(OutputStream out, char delimiter, boolean gzip) throws IOException {
+        if (delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+            throw new IllegalArgumentException("illegal delimiter: " + (int) delimiter);
+        }
 
-                rowNum ++;
-            }
+        ExportRecorder recorder = new ExportRecorder(exportListener, delimiter == ',' ? "CSV" : delimiter == '\t' ? "TSV" : "DELIMITED");
+        try {
+            OutputStream target = recorder.count(out);
+            GZIPOutputStream zout = gzip ? new GZIPOutputStream(target, EXPORT_BUFFER_SIZE) : null;
+            Writer writer = new OutputStreamWriter(gzip ? zout : target, StandardCharsets.UTF_8);
 
-            // 收尾
-            for (Map.Entry<String, Integer> entry : groupFieldRow.entrySet()) {
-                field = entry.getKey();
+            new DelimitedTextGenerator(writer, delimiter, recorder).generate();
 
-                mergeCell(sheet, entry.getValue(), rowNum - 1, field2column.get(field).columnIndex, field2column.get(field).columnIndex);
+            writer.flush();
+            if (zout != null) {
+                zout.finish();
             }
+            out.flush();
+        } catch (IOException | RuntimeException | Error e) {
+            recorder.failed(e);
+            throw e;
         }
 
-        private static HSSFCellStyle cellStyle4Head(HSSFWorkbook excel) {
-            HSSFCellStyle cellStyle = excel.createCellStyle();
+        recorder.completed();
+    }
+
+    // 导出excel, 不关闭传入的输出流
+    public void exportExcel(OutputStream out) throws IOException {
+        ExportRecorder recorder = new ExportRecorder(exportListener, excelType.name());
+        try {
+            BufferedOutputStream bout = new BufferedOutputStream(recorder.count(out), EXPORT_BUFFER_SIZE);
+
+            new ExcelGenerator(this, recorder).generate(bout);
+
+            bout.flush();
+        } catch (IOException | RuntimeException | Error e) {
+            recorder.failed(e);
+            throw e;
+        }
 
-            cellStyle.setAlignment(HSSFCellStyle.ALIGN_CENTER);
-            cellStyle.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+        recorder.completed();
+    }
 
-            HSSFFont font = excel.createFont();
-            font.setBoldweight(HSSFFont.BOLDWEIGHT_BOLD);//粗体显示
+    // 导出excel到通道(如socket、对象存储上传通道), 不关闭传入的通道
+    public void exportExcel(WritableByteChannel channel) throws IOException {
+        exportExcel(Channels.newOutputStream(channel));
+    }
 
-            cellStyle.setFont(font);
+    // 导出excel到文件, 文件已存在时覆盖
+    public void exportExcel(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            exportExcel(channel);
+        }
+    }
 
-            return cellStyle;
+    // 每次导出创建一个实例, 不持有静态可变状态, 可在多个线程中同时导出
+    private static class ExcelGenerator {
+        private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+        private static final int EXCEL_EPOCH_DAYS = 25569;                 // 1899-12-30至1970-01-01的天数
+        private static final int EXCEL_MARCH_1900 = 61;                    // 1900-03-01
+
+        private static final int HEAD_ROW_START = 4;
+        private static final int XLS_MAX_ROWS = 65536;
+        private static final int XLSX_MAX_ROWS = 1048576;
+        private static final int INITIAL_CHUNK_ROWS = 1024;
+
+        private final ReportTable table;
+        private final ExportRecorder recorder;
+        private final TimeZone timeZone = TimeZone.getDefault();
+
+        private Workbook excel;
+        private HeaderLayout layout;
+        private CellStyleRegistry styles;
+        private boolean sharedStrings;             // HSSF的字符串写入工作簿共享的字符串表, 并行写入时需要同步
+        private int sheetCount = 0;
+        private int dataRowStart;
+        private int[] excelColumn;                 // 数据列 -> excel列索引, 表头中不存在的数据列为-1
+        private CellStyle[] columnStyle;
+        private GroupTracker groups;
+        private int[] groupExcelColumn;            // 各分组层级的excel列索引
+        private GroupAggregator aggregator;        // 没有聚合列时为null
+        private CellStyle totalLabelStyle;
+        private int[] subtotalLabelColumn;         // 各分组层级小计行标签的excel列, 分组列有聚合时为-1
+        private int grandTotalLabelColumn;         // 合计行标签的excel列: 第一个没有聚合的列, 都有聚合时为-1
+        private CellStyle[] totalStyle;            // 各聚合列小计、合计单元格的样式
+        private boolean[] totalDate;               // 聚合结果是否为日期
+
+        private ExcelGenerator(ReportTable table, ExportRecorder recorder) {
+            this.table = table;
+            this.recorder = recorder;
         }
 
-        private static void generate() {
-            HSSFWorkbook excel = new HSSFWorkbook();
+        private static void mergeCell(Sheet sheet, int startRow, int endRow, int startColumn, int endColumn) {
+            CellRangeAddress cellRangeAddress = new CellRangeAddress(startRow, endRow, startColumn, endColumn);
+            sheet.addMergedRegion(cellRangeAddress);
+        }
 
-            HSSFSheet sheet = excel.createSheet("excel");
+        // 按编译好的布局写入表头, 只合并跨多个单元格的表头
+        private void generateHead(Sheet sheet, CellStyle cellStyle, int rowStart) {
+            int rowIndex = -1;
+            Row row = null;
+            Cell cell;
+            for (HeaderLayout.HeadCell h : layout.getCells()) {
+                if (h.getRow() != rowIndex) {
+                    rowIndex = h.getRow();
+                    row = sheet.createRow(rowStart + rowIndex);
+                }
 
-            HSSFCellStyle cellStyle = cellStyle4Head(excel);
+                cell = row.createCell(h.getColumn());
+                cell.setCellValue(h.getName());
+                cell.setCellStyle(cellStyle);
 
-            Map<Integer, HSSFRow> rowMap = new HashMap<>();
+                if (h.isMerged()) {
+                    mergeCell(sheet, rowStart + h.getRow(), rowStart + h.getLastRow(), h.getColumn(), h.getLastColumn());
+                }
+            }
+        }
 
+        // 叶子表头字段 -> excel列
+        private Map<String, Column> columns() {
             Map<String, Column> field2column = new HashMap<>();
 
-            // 生成标题
-//        createTitle(sheet);
+            Column column;
+            for (int k = 0; k < layout.getWidth(); k++) {
+                column = new Column();
+                column.field = layout.getField(k);
+                column.columnIndex = k;
+                column.dataType = layout.getDataType(k);
+                column.format = layout.getFormat(k);
+                column.aggregation = layout.getAggregation(k);
+
+                field2column.put(column.field, column);
+            }
 
-            // 生成列头
-            int headStart = nextRowNum(sheet);
+            return field2column;
+        }
 
-            headStart = 4;
+        // 与DateUtil.getExcelDate一致(1900日期系统), 不为每个单元格创建Date/Calendar
+        private double excelDate(long millis) {
+            double date = (millis + timeZone.getOffset(millis)) / (double) DAY_MILLIS + EXCEL_EPOCH_DAYS;
 
-            generateHead(sheet, cellStyle, table.getHead(), rowMap, field2column, headStart, 0);
+            if (date < EXCEL_MARCH_1900) {
+                return DateUtil.getExcelDate(new Date(millis));         // 1900-02-29之前需要按excel的闰年规则处理
+            }
 
-            // 填充数据
-            generateBody(sheet, field2column, table.getData(), table.getGroupField());
+            return date;
+        }
 
-            // 生成
-            FileOutputStream fout = null;
-            try{
-                fout = new FileOutputStream("D:/students.xls");
-                excel.write(fout);
-                fout.close();
-            }catch (Exception e){
-                e.printStackTrace();
+        private void generateCell(Row row, int columnIndex, RowCursor cursor, int dataColumn, CellStyle style) {
+            Cell cell = row.createCell(columnIndex);
+
+            switch (cursor.dataType(dataColumn)) {
+                case INTEGER:
+                    cell.setCellValue((double) cursor.getLong(dataColumn));
+                    break;
+                case DOUBLE:
+                    cell.setCellValue(cursor.getDouble(dataColumn));
+                    break;
+                case DATE:
+                    cell.setCellValue(excelDate(cursor.getLong(dataColumn)));
+                    break;
+                default:
+                    cell.setCellValue(cursor.getString(dataColumn));
+            }
+
+            if (style != null) {
+                cell.setCellStyle(style);
             }
         }
-    }
 
-    private class HtmlTableGenerator {
+        // 根据第一个sheet的表头确定数据列到excel列的映射、各列样式和分组列
+        private void layoutBody(CellStyleRegistry styles, Map<String, Column> field2column, RowCursor cursor, boolean verifyOrder) {
+            // 数据列 -> excel列索引, 表头中不存在的数据列为-1
+            int columnCount = cursor.columnCount();
+            excelColumn = new int[columnCount];
+            Map<String, Integer> field2data = new HashMap<>();
+            Column column;
+            for (int c = 0; c < columnCount; c++) {
+                column = field2column.get(cursor.field(c));
+                excelColumn[c] = column == null ? -1 : column.columnIndex;
+                field2data.put(cursor.field(c), c);
+            }
+
+            // 分组列(数据列索引), 按分组层级排列
+            List<Integer> groupList = new ArrayList<>();
+            Integer index;
+            for (String field : table.getGroupField()) {
+                index = field2data.get(field);
+                if (index != null && excelColumn[index] >= 0) {
+                    groupList.add(index);
+                }
+            }
+            groups = new GroupTracker(cursor,
+                    ArrayUtils.toPrimitive(groupList.toArray(new Integer[groupList.size()])), verifyOrder);
+
+            groupExcelColumn = new int[groups.levels()];
+            for (int l = 0; l < groups.levels(); l++) {
+                groupExcelColumn[l] = excelColumn[groups.groupColumn(l)];
+            }
+
+            // 每列的样式只查找一次, 并行写入前全部创建
+            columnStyle = new CellStyle[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                if (excelColumn[c] >= 0) {
+                    column = field2column.get(cursor.field(c));
+                    columnStyle[c] = styles.body(cursor.dataType(c), column.format, groupList.contains(c));
+                }
+            }
 
-        private String generate() {
+            // 聚合列, 没有时不写小计、合计
+            List<Integer> aggregateList = new ArrayList<>();
+            List<Aggregation> aggregationList = new ArrayList<>();
+            for (int c = 0; c < columnCount; c++) {
+                if (excelColumn[c] >= 0 && field2column.get(cursor.field(c)).aggregation != null) {
+                    aggregateList.add(c);
+                    aggregationList.add(field2column.get(cursor.field(c)).aggregation);
+                }
+            }
+
+            Footer footer = table.getFooter();
+            if (aggregateList.isEmpty() || !(footer.isSubtotal() || footer.isGrandTotal())) {
+                return;
+            }
+
+            aggregator = new GroupAggregator(cursor,
+                    ArrayUtils.toPrimitive(aggregateList.toArray(new Integer[aggregateList.size()])),
+                    aggregationList.toArray(new Aggregation[aggregationList.size()]), groups.levels());
+
+            // 标签只写在没有聚合的列, 不覆盖聚合结果
+            Set<Integer> aggregated = new HashSet<>();
+            for (int c : aggregateList) {
+                aggregated.add(excelColumn[c]);
+            }
+
+            subtotalLabelColumn = new int[groups.levels()];
+            for (int l = 0; l < groups.levels(); l++) {
+                subtotalLabelColumn[l] = aggregated.contains(groupExcelColumn[l]) ? -1 : groupExcelColumn[l];
+            }
+
+            grandTotalLabelColumn = -1;
+            for (Column c : field2column.values()) {
+                if (!aggregated.contains(c.columnIndex)
+                        && (grandTotalLabelColumn < 0 || c.columnIndex < grandTotalLabelColumn)) {
+                    grandTotalLabelColumn = c.columnIndex;
+                }
+            }
+
+            totalLabelStyle = styles.total(DataType.STRING, null);
+            totalStyle = new CellStyle[aggregator.size()];
+            totalDate = new boolean[aggregator.size()];
+            for (int k = 0; k < aggregator.size(); k++) {
+                if (aggregator.aggregation(k) == Aggregation.COUNT) {
+                    totalStyle[k] = styles.total(DataType.INTEGER, null);
+                } else {
+                    column = field2column.get(cursor.field(aggregator.column(k)));
+                    totalStyle[k] = styles.total(cursor.dataType(aggregator.column(k)), column.format);
+                    totalDate[k] = cursor.dataType(aggregator.column(k)) == DataType.DATE;      // MIN/MAX的结果为毫秒数
+                }
+            }
+        }
+
+        // 接收按顺序排列的数据行和小计、合计行
+        private interface BodySink {
+            /**
+             * @param level 第一个发生变化的分组层级
+             */
+            void addRow(RowCursor cursor, int level);
+
+            /**
+             * @param level 结束的分组层级, 小于0时为合计
+             * @param values 各聚合列的结果
+             */
+            void addTotal(int level, double[] values);
+        }
+
+        // 缓存的表体: 数据行和小计、合计行按顺序排列
+        private final class RowBuffer implements BodySink {
+            private final ColumnarData rows;
+            private int[] entries = new int[INITIAL_CHUNK_ROWS];       // 数据行为分组层级, 小计、合计行为 -(层级 + 2)
+            private final List<double[]> totals = new ArrayList<>();
+            private int size = 0;
+
+            private RowBuffer(RowCursor schema) {
+                this.rows = new ColumnarData(schema, INITIAL_CHUNK_ROWS);
+            }
+
+            private int size() {
+                return size;
+            }
+
+            private void add(int entry) {
+                if (size == entries.length) {
+                    entries = Arrays.copyOf(entries, entries.length * 2);
+                }
+                entries[size++] = entry;
+            }
+
+            @Override
+            public void addRow(RowCursor cursor, int level) {
+                rows.addRow(cursor);
+                add(level);
+            }
+
+            @Override
+            public void addTotal(int level, double[] values) {
+                totals.add(values);
+                add(-(level + 2));
+            }
+
+            private void clear() {
+                rows.clear();
+                totals.clear();
+                size = 0;
+            }
+
+            private void replay(BodySink sink) {
+                RowCursor cursor = rows.cursor(null);
+                int total = 0;
+                for (int i = 0; i < size; i++) {
+                    if (entries[i] >= 0) {
+                        cursor.next();
+                        sink.addRow(cursor, entries[i]);
+                    } else {
+                        sink.addTotal(-entries[i] - 2, totals.get(total++));
+                    }
+                }
+            }
+        }
+
+        /**
+         * 一个sheet的表体, 逐行写入并按分组层级合并分组列; 每个sheet只由一个线程写入.
+         * 分组的合并区域先缓存, sheet写完后一次写入
+         */
+        private final class SheetBody implements BodySink {
+            private final Sheet sheet;
+            private final MergedRegionBuffer merges;
+            private final int[] groupStart = new int[groupExcelColumn.length];     // 各层级当前分组的起始行, 已结束为-1
+            private int rowNum = dataRowStart;
+            private long cells;
+
+            // 在创建sheet的线程中构造
+            private SheetBody(Sheet sheet) {
+                this.sheet = sheet;
+                this.merges = new MergedRegionBuffer(sheet);
+
+                Arrays.fill(groupStart, -1);
+            }
+
+            private int rows() {
+                return rowNum - dataRowStart;
+            }
+
+            // 合并level及以下层级的分组
+            private void endGroups(int level) {
+                for (int l = groupStart.length - 1; l >= level; l--) {
+                    if (groupStart[l] >= 0) {
+                        merges.add(groupStart[l], rowNum - 1, groupExcelColumn[l], groupExcelColumn[l]);     // 只有一行的分组不合并
+                        groupStart[l] = -1;
+                    }
+                }
+            }
+
+            @Override
+            public void addRow(RowCursor cursor, int level) {
+                // 上层分组变化时下层分组同时结束
+                endGroups(level);
+
+                Row row = sheet.createRow(rowNum);
+
+                for (int c = 0; c < excelColumn.length; c++) {
+                    if (excelColumn[c] < 0 || cursor.isNull(c)) {
+                        continue;
+                    }
+
+                    if (sharedStrings && cursor.dataType(c) == DataType.STRING) {
+                        synchronized (excel) {
+                            generateCell(row, excelColumn[c], cursor, c, columnStyle[c]);
+                        }
+                    } else {
+                        generateCell(row, excelColumn[c], cursor, c, columnStyle[c]);
+                    }
+                    cells++;
+                }
+
+                for (int l = level; l < groupStart.length; l++) {
+                    groupStart[l] = rowNum;
+                }
+
+                rowNum ++;
+            }
+
+            // 小计行的标签写在该层级的分组列, 合计行写在第一个没有聚合的列; 分组的合并范围不含自身的小计行
+            @Override
+            public void addTotal(int level, double[] values) {
+                endGroups(Math.max(level, 0));
+
+                Row row = sheet.createRow(rowNum);
+
+                int labelColumn = level < 0 ? grandTotalLabelColumn : subtotalLabelColumn[level];
+                Cell cell;
+                if (labelColumn >= 0) {
+                    String label = level < 0 ? table.getFooter().getGrandTotalLabel() : table.getFooter().getSubtotalLabel();
+                    cell = row.createCell(labelColumn);
+                    if (sharedStrings) {
+                        synchronized (excel) {
+                            cell.setCellValue(label);
+                        }
+                    } else {
+                        cell.setCellValue(label);
+                    }
+                    cell.setCellStyle(totalLabelStyle);
+                }
+
+                for (int k = 0; k < values.length; k++) {
+                    if (Double.isNaN(values[k])) {
+                        continue;
+                    }
+
+                    cell = row.createCell(excelColumn[aggregator.column(k)]);
+                    if (totalDate[k]) {
+                        cell.setCellValue(excelDate((long) values[k]));
+                    } else {
+                        cell.setCellValue(values[k]);
+                    }
+                    cell.setCellStyle(totalStyle[k]);
+                    cells++;
+                }
+
+                rowNum ++;
+            }
+
+            // 收尾
+            private void finish() {
+                endGroups(0);
+
+                long mergedRegions = merges.size();
+                if (!recorder.enabled()) {
+                    merges.apply();
+                    recorder.add(rows(), cells, mergedRegions, 0);
+                    return;
+                }
+
+                // 只在设置了监听器时统计合并单元格耗时
+                long begin = System.nanoTime();
+                merges.apply();
+
+                recorder.add(rows(), cells, mergedRegions, System.nanoTime() - begin);
+            }
+        }
+
+        // 并行生成时缓存一个sheet的行, sheet分满后交给工作线程写入
+        private final class SheetChunk {
+            private final SheetBody body;
+            private final RowBuffer rows;
+            private Future<?> future;
+
+            private SheetChunk(Sheet sheet, RowCursor schema) {
+                this.body = new SheetBody(sheet);
+                this.rows = new RowBuffer(schema);
+            }
+
+            private void write() {
+                rows.replay(body);
+
+                body.finish();
+            }
+        }
+
+        /**
+         * 创建sheet并写入表头, 只在导出线程中调用.
+         * 并行生成时工作线程同时在写其他sheet, 创建sheet和表头字符串都修改工作簿(sheet列表、共享字符串表), 与写入字符串单元格使用同一把锁
+         */
+        private Sheet createSheet() {
+            long begin = System.nanoTime();
+
+            Sheet sheet;
+            synchronized (excel) {
+                sheetCount++;
+                sheet = excel.createSheet(sheetCount == 1 ? "excel" : "excel-" + sheetCount);
+                generateHead(sheet, styles.head(), HEAD_ROW_START);
+            }
+
+            recorder.phase(ExportPhase.HEAD, begin);
+
+            return sheet;
+        }
+
+        /**
+         * 按sheet分配数据行: sheet满时换到下一个sheet; 设置了sheet行数上限时, 当前sheet剩余行数放得下的最外层分组(含小计行)不跨sheet.
+         * 读取数据的同时累计聚合列, 在分组结束时插入小计行, 最后插入合计行
+         */
+        private abstract class SheetPartitioner implements BodySink {
+            final int rowLimit;
+
+            private SheetPartitioner(int rowLimit) {
+                this.rowLimit = rowLimit;
+            }
+
+            // 当前sheet已分配的行数
+            abstract int rows();
+
+            // 当前sheet
+            abstract BodySink sheet();
+
+            // 结束当前sheet并开始下一个sheet
+            abstract void nextSheet();
+
+            abstract void finish();
+
+            // 已分配到sheet但还未写入的行数
+            long bufferedRows() {
+                return 0;
+            }
+
+            @Override
+            public void addRow(RowCursor cursor, int level) {
+                if (rows() == rowLimit) {
+                    nextSheet();
+                    level = 0;
+                }
+
+                sheet().addRow(cursor, level);
+            }
+
+            @Override
+            public void addTotal(int level, double[] values) {
+                if (rows() == rowLimit) {
+                    nextSheet();
+                }
+
+                sheet().addTotal(level, values);
+            }
+
+            private void addGroup(RowBuffer group) {
+                if (rows() > 0 && rows() + group.size() > rowLimit) {
+                    nextSheet();
+                }
+
+                group.replay(this);
+            }
+
+            // 第一个变化的层级及以下的分组结束, 由下至上写入小计行
+            private void addSubtotals(BodySink group, int level) {
+                if (aggregator == null || !table.getFooter().isSubtotal()) {
+                    return;
+                }
+
+                for (int l = groups.levels() - 1; l >= level; l--) {
+                    group.addTotal(l, aggregator.take(l));
+                }
+            }
+
+            private void partition(RowCursor cursor) {
+                if (groups.levels() == 0) {
+                    while (cursor.next()) {
+                        addRow(cursor, 0);
+                        recorder.buffered(bufferedRows());
+
+                        if (aggregator != null) {
+                            aggregator.add(cursor);
+                        }
+                    }
+                } else {
+                    // 当前最外层分组可能放得下当前sheet时先缓存, 分组结束时才能确定;
+                    // 超出当前sheet的剩余行数或未设置sheet行数上限时直接写入, 缓存不超过一个sheet
+                    boolean keepGroups = table.getSheetRowLimit() > 0;
+                    RowBuffer group = new RowBuffer(cursor);
+                    BodySink target = keepGroups ? group : this;
+                    boolean first = true;
+                    int level;
+
+                    while (cursor.next()) {
+                        level = groups.advance();
+                        if (!first) {
+                            addSubtotals(target, level);
+
+                            if (level == 0) {
+                                if (target == group) {
+                                    addGroup(group);
+                                    group.clear();
+                                }
+                                target = keepGroups ? group : this;
+                            }
+                        }
+
+                        target.addRow(cursor, level);
+                        first = false;
+
+                        if (target == group && rows() + group.size() > rowLimit) {
+                            addGroup(group);
+                            group.clear();
+                            target = this;
+                        }
+                        recorder.buffered(group.size() + bufferedRows());
+
+                        if (aggregator != null) {
+                            aggregator.add(cursor);
+                        }
+                    }
+
+                    if (!first) {
+                        addSubtotals(target, 0);
+                        if (target == group) {
+                            addGroup(group);
+                        }
+                    }
+                }
+
+                if (aggregator != null && table.getFooter().isGrandTotal()) {
+                    addTotal(-1, aggregator.take(-1));
+                }
+
+                finish();
+            }
+        }
+
+        // 在导出线程中逐行写入
+        private final class SequentialPartitioner extends SheetPartitioner {
+            private SheetBody body;
+
+            private SequentialPartitioner(int rowLimit, Sheet first) {
+                super(rowLimit);
+
+                this.body = new SheetBody(first);
+            }
+
+            @Override
+            int rows() {
+                return body.rows();
+            }
+
+            @Override
+            BodySink sheet() {
+                return body;
+            }
+
+            @Override
+            void nextSheet() {
+                body.finish();
+                body = new SheetBody(createSheet());
+            }
+
+            @Override
+            void finish() {
+                body.finish();
+            }
+        }
+
+        // 导出线程读取并缓存各sheet的行, 工作线程同时写入多个sheet
+        private final class ParallelPartitioner extends SheetPartitioner {
+            private final RowCursor schema;
+            private final ExecutorService workers;
+            private final int parallelism;
+            private final long bufferRows;
+            private final Deque<SheetChunk> pending = new ArrayDeque<>();
+            private long pendingRows = 0;
+            private SheetChunk chunk;
+
+            private ParallelPartitioner(int rowLimit, Sheet first,
+                                        RowCursor schema, ExecutorService workers, int parallelism, long bufferRows) {
+                super(rowLimit);
+
+                this.schema = schema;
+                this.workers = workers;
+                this.parallelism = parallelism;
+                this.bufferRows = bufferRows;
+                this.chunk = new SheetChunk(first, schema);
+            }
+
+            @Override
+            int rows() {
+                return chunk.rows.size();
+            }
+
+            @Override
+            BodySink sheet() {
+                return chunk.rows;
+            }
+
+            @Override
+            long bufferedRows() {
+                return pendingRows + chunk.rows.size();
+            }
+
+            private void submit() {
+                final SheetChunk full = chunk;
+                full.future = workers.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        full.write();
+                    }
+                });
+
+                pending.add(full);
+                pendingRows += full.rows.size();
+            }
+
+            @Override
+            void nextSheet() {
+                submit();
+
+                // 限制缓存的sheet数和行数, 下一个sheet最多缓存rowLimit行
+                while (pending.size() >= parallelism
+                        || !pending.isEmpty() && pendingRows + rowLimit > bufferRows) {
+                    await(pending.poll());
+                }
+
+                chunk = new SheetChunk(createSheet(), schema);
+            }
+
+            @Override
+            void finish() {
+                submit();
+
+                while (!pending.isEmpty()) {
+                    await(pending.poll());
+                }
+            }
+
+            private void await(SheetChunk written) {
+                pendingRows -= written.rows.size();
+
+                try {
+                    written.future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while generating sheets", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        }
+
+        // 每个sheet最多的数据行数
+        private int sheetRowLimit() {
+            int formatLimit = (table.getExcelType() == ExcelType.XLSX ? XLSX_MAX_ROWS : XLS_MAX_ROWS) - dataRowStart;
+
+            return table.getSheetRowLimit() > 0 ? Math.min(table.getSheetRowLimit(), formatLimit) : formatLimit;
+        }
+
+        private static ExecutorService newWorkers(int parallelism) {
+            return Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "report-sheet-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        private Workbook createWorkbook() {
+            if (table.getExcelType() == ExcelType.XLSX) {
+                SXSSFWorkbook excel = new SXSSFWorkbook(table.getRowAccessWindowSize());
+                excel.setCompressTempFiles(true);      // 百万行级别的临时文件压缩后体积约为原来的十分之一
+                return excel;
+            }
+
+            return new HSSFWorkbook();
+        }
+
+        private void generate(OutputStream out) throws IOException {
+            excel = createWorkbook();
+            try {
+                generateWorkbook(out);
+            } finally {
+                // 删除刷写行时产生的临时文件, 生成表头、数据或写出失败时同样删除
+                if (excel instanceof SXSSFWorkbook) {
+                    ((SXSSFWorkbook) excel).dispose();
+                }
+            }
+        }
+
+        private void generateWorkbook(OutputStream out) throws IOException {
+            sharedStrings = excel instanceof HSSFWorkbook;
+
+            styles = new CellStyleRegistry(excel);
+
+            layout = table.getHeaderLayout();
+            Map<String, Column> field2column = columns();
+
+            // 生成列头
+            Sheet first = createSheet();
+            dataRowStart = HEAD_ROW_START + Math.max(layout.getDepth(), 1);
+
+            // 填充数据
+            boolean verifyOrder = table.verifyOrder();
+            ExecutorService workers = null;
+            long begin = System.nanoTime();
+            try (RowCursor cursor = table.openCursor()) {
+                recorder.phase(ExportPhase.SORT, begin);
+
+                begin = System.nanoTime();
+                layoutBody(styles, field2column, cursor, verifyOrder);
+
+                int parallelism = table.getSheetParallelism();
+                SheetPartitioner partitioner;
+                if (parallelism > 1) {
+                    workers = newWorkers(parallelism);
+                    partitioner = new ParallelPartitioner(sheetRowLimit(), first, cursor, workers, parallelism,
+                            table.getSheetBufferRows());
+                } else {
+                    partitioner = new SequentialPartitioner(sheetRowLimit(), first);
+                }
+
+                partitioner.partition(cursor);
+
+                recorder.phase(ExportPhase.BODY, begin);
+            } finally {
+                if (workers != null) {
+                    workers.shutdownNow();
+                }
+            }
+
+            // 生成
+            begin = System.nanoTime();
+            excel.write(out);
+
+            recorder.phase(ExportPhase.WRITE, begin);
+        }
+    }
+
+    // 生成html表格: 表头按跨行跨列生成<th>, 分组列按分组生成带rowspan的<td>
+    private class HtmlTableGenerator {
+        private static final String DATE_FORMAT = "yyyy-MM-dd";
+        private static final int INITIAL_GROUP_ROWS = 64;
+
+        private final Writer out;
+        private final ExportRecorder recorder;
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
+        private long rows;
+        private long cells;
+        private long spans;
+
+        private HtmlTableGenerator(Writer out, ExportRecorder recorder) {
+            this.out = out;
+            this.recorder = recorder;
+        }
+
+        // 转义后写出, 只在遇到需要转义的字符时分段写出
+        private void writeEscaped(String value) throws IOException {
+            int start = 0;
+            String entity;
+            for (int i = 0; i < value.length(); i++) {
+                switch (value.charAt(i)) {
+                    case '&':
+                        entity = "&amp;";
+                        break;
+                    case '<':
+                        entity = "&lt;";
+                        break;
+                    case '>':
+                        entity = "&gt;";
+                        break;
+                    case '"':
+                        entity = "&quot;";
+                        break;
+                    case '\'':
+                        entity = "&#39;";
+                        break;
+                    default:
+                        continue;
+                }
+
+                out.write(value, start, i - start);
+                out.write(entity);
+                start = i + 1;
+            }
+
+            out.write(value, start, value.length() - start);
+        }
+
+        private void writeSpan(String name, int span) throws IOException {
+            if (span > 1) {
+                out.write(' ');
+                out.write(name);
+                out.write("=\"");
+                out.write(Integer.toString(span));
+                out.write('"');
+            }
+        }
+
+        private void generateHead() throws IOException {
+            int rowIndex = -1;
+
+            out.write("<thead>\n");
+            for (HeaderLayout.HeadCell h : getHeaderLayout().getCells()) {
+                if (h.getRow() != rowIndex) {
+                    if (rowIndex >= 0) {
+                        out.write("</tr>\n");
+                    }
+                    out.write("<tr>");
+                    rowIndex = h.getRow();
+                }
+
+                out.write("<th");
+                writeSpan("colspan", h.getColumnSpan());
+                writeSpan("rowspan", h.getRowSpan());
+                out.write('>');
+                writeEscaped(h.getName());
+                out.write("</th>");
+            }
+            if (rowIndex >= 0) {
+                out.write("</tr>\n");
+            }
+            out.write("</thead>\n");
+        }
+
+        private void writeValue(RowCursor cursor, int column) throws IOException {
+            switch (cursor.dataType(column)) {
+                case INTEGER:
+                    out.write(Long.toString(cursor.getLong(column)));
+                    break;
+                case DOUBLE:
+                    double value = cursor.getDouble(column);
+                    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                        out.write(Long.toString((long) value));             // 与excel一致, 整数不显示小数部分
+                    } else {
+                        out.write(Double.toString(value));
+                    }
+                    break;
+                case DATE:
+                    out.write(dateFormat.format(new Date(cursor.getLong(column))));
+                    break;
+                default:
+                    writeEscaped(cursor.getString(column));
+            }
+        }
+
+        private void writeCell(RowCursor cursor, int column, int rowSpan) throws IOException {
+            out.write("<td");
+            writeSpan("rowspan", rowSpan);
+            out.write('>');
+
+            if (column >= 0 && !cursor.isNull(column)) {
+                writeValue(cursor, column);
+                cells++;
+            }
+            if (rowSpan > 1) {
+                spans++;
+            }
+
+            out.write("</td>");
+        }
+
+        /**
+         * 写出一个最外层分组的所有行, 分组内各层的行数在此时已经确定
+         *
+         * @param changed 每行第一个发生变化的分组层级
+         */
+        private void writeGroup(ColumnarData group, int[] changed, int[] dataColumn, int[] levelOf, int levels) throws IOException {
+            int size = group.size();
+
+            // span[l][i]: 第i行开始的第l层分组的行数
+            int[][] span = new int[levels][size];
+            int nextStart;
+            for (int l = 0; l < levels; l++) {
+                nextStart = size;
+                for (int i = size - 1; i >= 0; i--) {
+                    if (changed[i] <= l) {
+                        span[l][i] = nextStart - i;
+                        nextStart = i;
+                    }
+                }
+            }
+
+            RowCursor rows = group.cursor(null);
+            int level;
+            for (int i = 0; rows.next(); i++) {
+                out.write("<tr>");
+                for (int k = 0; k < dataColumn.length; k++) {
+                    level = levelOf[k];
+                    if (level < 0) {
+                        writeCell(rows, dataColumn[k], 1);
+                    } else if (changed[i] <= level) {
+                        writeCell(rows, dataColumn[k], span[level][i]);
+                    }
+                }
+                out.write("</tr>\n");
+            }
+
+            this.rows += size;
+        }
+
+        /**
+         * 逐行写出; 有分组时只缓存当前最外层分组的行(rowspan需要分组行数), 不缓存整个表
+         */
+        private void generateBody(RowCursor cursor, boolean verifyOrder) throws IOException {
+            int[] dataColumn = leafColumns(getHeaderLayout(), cursor);
+
+            // 只有出现在表头中的分组列参与合并
+            List<Integer> keys = new ArrayList<>();
+            for (int key : groupColumns(cursor)) {
+                if (ArrayUtils.contains(dataColumn, key)) {
+                    keys.add(key);
+                }
+            }
+            GroupTracker groups = new GroupTracker(cursor, ArrayUtils.toPrimitive(keys.toArray(new Integer[keys.size()])), verifyOrder);
+
+            int[] levelOf = new int[dataColumn.length];         // 叶子表头所在的分组层级, 非分组列为-1
+            Arrays.fill(levelOf, -1);
+            for (int l = 0; l < groups.levels(); l++) {
+                levelOf[ArrayUtils.indexOf(dataColumn, groups.groupColumn(l))] = l;
+            }
+
+            out.write("<tbody>\n");
+
+            if (groups.levels() == 0) {
+                while (cursor.next()) {
+                    out.write("<tr>");
+                    for (int column : dataColumn) {
+                        writeCell(cursor, column, 1);
+                    }
+                    out.write("</tr>\n");
+                    rows++;
+                }
+            } else {
+                ColumnarData group = new ColumnarData(cursor, INITIAL_GROUP_ROWS);
+                int[] changed = new int[INITIAL_GROUP_ROWS];
+                int level, row;
+
+                while (cursor.next()) {
+                    level = groups.advance();
+                    if (level == 0 && group.size() > 0) {
+                        writeGroup(group, changed, dataColumn, levelOf, groups.levels());
+                        group.clear();
+                    }
+
+                    row = group.addRow(cursor);
+                    if (row == changed.length) {
+                        changed = Arrays.copyOf(changed, changed.length * 2);
+                    }
+                    changed[row] = level;
+                    recorder.buffered(group.size());
+                }
+
+                if (group.size() > 0) {
+                    writeGroup(group, changed, dataColumn, levelOf, groups.levels());
+                }
+            }
+
+            out.write("</tbody>\n");
+        }
+
+        private void generate() throws IOException {
+            out.write("<table>\n");
+
+            long begin = System.nanoTime();
+            generateHead();
+            recorder.phase(ExportPhase.HEAD, begin);
+
+            boolean verifyOrder = verifyOrder();
+            begin = System.nanoTime();
+            try (RowCursor cursor = openCursor()) {
+                recorder.phase(ExportPhase.SORT, begin);
+
+                begin = System.nanoTime();
+                generateBody(cursor, verifyOrder);
+                recorder.phase(ExportPhase.BODY, begin);
+            }
+
+            out.write("</table>\n");
+
+            recorder.add(rows, cells, spans, 0);
+        }
+    }
+
+    /**
+     * 生成分隔符分隔的文本. 单元格直接写入可复用的字符缓冲区, 整数和日期按字符写入,
+     * 字符串直接复制, 除非整数的double外不为单元格创建对象
+     */
+    private class DelimitedTextGenerator {
+        private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+        private static final double MAX_INTEGRAL_DOUBLE = 1e15;            // 小于此值的整数double按整数写出
+
+        private final Writer out;
+        private final char delimiter;
+        private final ExportRecorder recorder;
+        private final char[] buffer = new char[EXPORT_BUFFER_SIZE];
+        private int position = 0;
+        private final TimeZone timeZone = TimeZone.getDefault();
+
+        private DelimitedTextGenerator(Writer out, char delimiter, ExportRecorder recorder) {
+            this.out = out;
+            this.delimiter = delimiter;
+            this.recorder = recorder;
+        }
+
+        private void flushBuffer() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+
+        private void append(char c) throws IOException {
+            if (position == buffer.length) {
+                flushBuffer();
+            }
+
+            buffer[position++] = c;
+        }
+
+        private void append(String value) throws IOException {
+            int length = value.length();
+            if (length > buffer.length - position) {
+                flushBuffer();
+
+                if (length > buffer.length) {
+                    out.write(value);
+                    return;
+                }
+            }
+
+            value.getChars(0, length, buffer, position);
+            position += length;
+        }
+
+        private void appendLong(long value) throws IOException {
+            if (value == Long.MIN_VALUE) {
+                append(Long.toString(value));
+                return;
+            }
+
+            if (buffer.length - position < 20) {
+                flushBuffer();
+            }
+
+            if (value < 0) {
+                buffer[position++] = '-';
+                value = -value;
+            }
+
+            int digits = 1;
+            for (long v = value / 10; v > 0; v /= 10) {
+                digits++;
+            }
+
+            position += digits;
+            for (int i = position - 1; i >= position - digits; i--) {
+                buffer[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+        }
+
+        // 写出定长数字, 不足时左侧补0
+        private void appendDigits(int value, int width) throws IOException {
+            if (buffer.length - position < width) {
+                flushBuffer();
+            }
+
+            for (int i = position + width - 1; i >= position; i--) {
+                buffer[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+            position += width;
+        }
+
+        // 按默认时区写出yyyy-MM-dd
+        private void appendDate(long millis) throws IOException {
+            long days = Math.floorDiv(millis + timeZone.getOffset(millis), DAY_MILLIS);
+
+            // 公历日期换算, 3月为每年的第一个月
+            long z = days + 719468;
+            long era = Math.floorDiv(z, 146097);
+            long dayOfEra = z - era * 146097;
+            long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            long mp = (5 * dayOfYear + 2) / 153;
+            int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+            int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+            long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+            if (year >= 0 && year <= 9999) {
+                appendDigits((int) year, 4);
+            } else {
+                appendLong(year);
+            }
+            append('-');
+            appendDigits(month, 2);
+            append('-');
+            appendDigits(day, 2);
+        }
+
+        private void appendDouble(double value) throws IOException {
+            if (value == Math.rint(value) && Math.abs(value) < MAX_INTEGRAL_DOUBLE) {
+                appendLong((long) value);
+            } else {
+                append(Double.toString(value));
+            }
+        }
+
+        // 含分隔符、引号或换行时加引号, 值中的引号写为两个引号
+        private void appendField(String value) throws IOException {
+            int length = value.length();
+            char c;
+            int i = 0;
+            for (; i < length; i++) {
+                c = value.charAt(i);
+                if (c == delimiter || c == '"' || c == '\n' || c == '\r') {
+                    break;
+                }
+            }
+
+            if (i == length) {
+                append(value);
+                return;
+            }
+
+            append('"');
+            for (i = 0; i < length; i++) {
+                c = value.charAt(i);
+                if (c == '"') {
+                    append('"');
+                }
+                append(c);
+            }
+            append('"');
+        }
+
+        private void appendValue(RowCursor cursor, int column) throws IOException {
+            switch (cursor.dataType(column)) {
+                case INTEGER:
+                    appendLong(cursor.getLong(column));
+                    break;
+                case DOUBLE:
+                    appendDouble(cursor.getDouble(column));
+                    break;
+                case DATE:
+                    appendDate(cursor.getLong(column));
+                    break;
+                default:
+                    appendField(cursor.getString(column));
+            }
+        }
+
+        private void newLine() throws IOException {
+            append('\r');
+            append('\n');
+        }
+
+        private void generate() throws IOException {
+            long begin = System.nanoTime();
+            HeaderLayout layout = getHeaderLayout();
+            for (int k = 0; k < layout.getWidth(); k++) {
+                if (k > 0) {
+                    append(delimiter);
+                }
+                appendField(layout.getName(k));
+            }
+            newLine();
+            recorder.phase(ExportPhase.HEAD, begin);
+
+            long rows = 0, cells = 0;
+            boolean verifyOrder = verifyOrder();
+            begin = System.nanoTime();
+            try (RowCursor cursor = openCursor()) {
+                recorder.phase(ExportPhase.SORT, begin);
+
+                begin = System.nanoTime();
+                int[] dataColumn = leafColumns(layout, cursor);
+                int column;
+
+                // 不合并分组, 只在需要校验顺序时跟踪分组列
+                GroupTracker groups = verifyOrder ? new GroupTracker(cursor, groupColumns(cursor), true) : null;
+
+                while (cursor.next()) {
+                    if (groups != null) {
+                        groups.advance();
+                    }
+
+                    for (int k = 0; k < dataColumn.length; k++) {
+                        if (k > 0) {
+                            append(delimiter);
+                        }
+
+                        column = dataColumn[k];
+                        if (column >= 0 && !cursor.isNull(column)) {
+                            appendValue(cursor, column);
+                            cells++;
+                        }
+                    }
+                    newLine();
+                    rows++;
+                }
+            }
 
+            flushBuffer();
+            recorder.phase(ExportPhase.BODY, begin);
 
-            return null;
+            recorder.add(rows, cells, 0, 0);
         }
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         Head h = new Head("h", "h");
 
         Head sh = new Head("sh", "sh");
@@ -595,6 +2152,6 @@ public class ReportTable {
         }
 
         table.setData(datas);
-        table.exportExcel();
+        table.exportExcel(Paths.get(args.length > 0 ? args[0] : "students.xls"));
     }
 }
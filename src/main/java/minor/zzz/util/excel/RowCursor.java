@@ -0,0 +1,36 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.DataType;
+
+import java.io.Closeable;
+
+/**
+ * 逐行读取报表数据的游标, 列索引与叶子表头顺序一致.
+ *
+ * 初始位置在第一行之前, 调用next()后才能读取; 读取方法按列类型调用, 不做装箱.
+ * 使用完毕后须调用close()释放游标持有的资源(如外部排序的临时文件).
+ */
+public interface RowCursor extends Closeable {
+
+    int columnCount();
+
+    String field(int column);
+
+    DataType dataType(int column);
+
+    // 移动到下一行, 没有更多行时返回false
+    boolean next();
+
+    boolean isNull(int column);
+
+    // INTEGER列的值或DATE列的毫秒时间戳
+    long getLong(int column);
+
+    double getDouble(int column);
+
+    String getString(int column);
+
+    @Override
+    default void close() {
+    }
+}
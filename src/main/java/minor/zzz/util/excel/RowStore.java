@@ -0,0 +1,21 @@
+package minor.zzz.util.excel;
+
+/**
+ * 可随机访问的报表数据, 导出时只生成按分组列排序后的行顺序, 再按该顺序以游标读取, 不移动数据.
+ */
+interface RowStore {
+
+    int size();
+
+    // 追加或清空行时递增, 与排序时不同说明之前的行顺序已失效
+    int modCount();
+
+    // 字段对应的列索引, 不存在时返回-1
+    int columnIndex(String field);
+
+    // 按keys列依次排序后的行顺序, 空值在前, 相等的行保持添加顺序
+    int[] sortedOrder(int[] keys);
+
+    // 按行顺序读取的游标, order为null时按添加顺序
+    RowCursor cursor(int[] order);
+}
@@ -0,0 +1,76 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 只保存当前行的游标基类, 当前行的值按列类型存入可复用的槽位, 由子类在next()中填充.
+ */
+abstract class SlotRowCursor implements RowCursor {
+
+    protected final String[] fields;
+    protected final DataType[] dataTypes;
+
+    protected final boolean[] present;
+    protected final long[] longs;
+    protected final double[] doubles;
+    protected final String[] strings;
+
+    SlotRowCursor(List<Head> head) {
+        List<Head> leaves = new ArrayList<>();
+        for (Head h : head) {
+            h.collectLeaves(leaves);
+        }
+
+        int columnCount = leaves.size();
+        this.fields = new String[columnCount];
+        this.dataTypes = new DataType[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            fields[i] = leaves.get(i).getField();
+            dataTypes[i] = leaves.get(i).getDataType();
+        }
+
+        this.present = new boolean[columnCount];
+        this.longs = new long[columnCount];
+        this.doubles = new double[columnCount];
+        this.strings = new String[columnCount];
+    }
+
+    @Override
+    public int columnCount() {
+        return fields.length;
+    }
+
+    @Override
+    public String field(int column) {
+        return fields[column];
+    }
+
+    @Override
+    public DataType dataType(int column) {
+        return dataTypes[column];
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return !present[column];
+    }
+
+    @Override
+    public long getLong(int column) {
+        return longs[column];
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return doubles[column];
+    }
+
+    @Override
+    public String getString(int column) {
+        return strings[column];
+    }
+}
@@ -0,0 +1,56 @@
+package minor.zzz.util.threadpool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 统计已提交但未执行完的任务数, 可等待所有任务(包括任务中再提交的任务)执行完毕的线程池.
+ * 多个作业共用线程池时以TaskGroup分别等待各作业的任务
+ */
+public interface CountingExecutor extends ExecutorService {
+
+    /**
+     * Awaits the completion of all spawned tasks.
+     */
+    void awaitCompletion() throws InterruptedException;
+
+    /**
+     * Awaits the completion of all spawned tasks.
+     */
+    void awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * 等待所有任务完成后关闭线程池
+     */
+    void awaitShutdown();
+
+    /**
+     * 提交属于group的任务, 任务中再提交的任务也属于group
+     */
+    default void execute(Runnable command, TaskGroup group) {
+        if (group == null) {
+            throw new IllegalArgumentException("group is null");
+        }
+
+        TaskGroup previous = TaskGroup.swap(group);
+        try {
+            execute(command);
+        } finally {
+            TaskGroup.swap(previous);
+        }
+    }
+
+    /**
+     * Awaits the completion of all tasks of the group and its children.
+     */
+    default void awaitCompletion(TaskGroup group) throws InterruptedException {
+        group.awaitCompletion();
+    }
+
+    /**
+     * Awaits the completion of all tasks of the group and its children.
+     */
+    default void awaitCompletion(TaskGroup group, long timeout, TimeUnit unit) throws InterruptedException {
+        group.awaitCompletion(timeout, unit);
+    }
+}
@@ -2,37 +2,428 @@ package minor.zzz.util.threadpool;
 
 import minor.zzz.util.threadpool.support.CountLatch;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 适用于无法明确预估任务数同时又需要等待所有任务执行完毕的情况(比如任务是递归创建的)
+ *
+ * 被拒绝的任务和remove, purge, shutdownNow移除的任务都会减少计数. 拒绝策略须在rejectedExecution中
+ * 执行或重新提交任务, 不能把任务交给其他线程稍后执行.
+ * 可限制已提交未完成的任务数(maxInFlight), 超出时提交任务的线程等待或直接执行任务, 控制任务队列占用的内存.
+ * getMetrics()开启任务统计后, 记录每个任务的排队等待时间和执行时间
  */
-public class CountingThreadPoolExecutor extends ThreadPoolExecutor {
+public class CountingThreadPoolExecutor extends ThreadPoolExecutor implements CountingExecutor {
 
-    protected final CountLatch numRunningTasks = new CountLatch(0);
+    /**
+     * 已提交未完成的任务数达到上限时的处理方式. 线程池自己的线程提交任务时总是直接执行, 避免所有线程互相等待
+     */
+    public enum InFlightPolicy {
+        BLOCK,              // 等待直到有任务完成
+        CALLER_RUNS         // 在提交任务的线程中直接执行
+    }
+
+    // 被拒绝的任务不会执行afterExecute, 在这里减少计数
+    private final class CountingRejectedHandler implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler handler;
+
+        private CountingRejectedHandler(RejectedExecutionHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (metrics.isEnabled()) {
+                metrics.recordReject();
+            }
+
+            try {
+                if (handler instanceof DiscardOldestPolicy) {
+                    // 丢弃的队首任务已计数, 同样减少计数
+                    if (!executor.isShutdown()) {
+                        Runnable oldest = executor.getQueue().poll();
+                        if (oldest != null) {
+                            cancelled(oldest);
+                        }
+                        executor.execute(r);
+                    }
+                } else {
+                    handler.rejectedExecution(r, executor);
+                }
+            } finally {
+                // 重新提交的任务已重新计数; 直接执行的任务已执行完毕
+                cancelled(r);
+            }
+        }
+    }
+
+    // executeAll提交的一批任务, 由多个BatchTask分段领取
+    private static final class Batch {
+        private final Runnable[] tasks;
+        private final int grain;
+        private final AtomicInteger next = new AtomicInteger();
+
+        private Batch(Runnable[] tasks, int grain) {
+            this.tasks = tasks;
+            this.grain = grain;
+        }
+    }
+
+    // 每次领取grain个任务依次执行, 直到全部领完. 同批的BatchTask以Batch为key增减计数
+    private static final class BatchTask implements Runnable {
+        private final Batch batch;
+
+        private BatchTask(Batch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void run() {
+            Runnable[] tasks = batch.tasks;
+            int start;
+            while ((start = batch.next.getAndAdd(batch.grain)) < tasks.length) {
+                int end = Math.min(start + batch.grain, tasks.length);
+                for (int i = start; i < end; i++) {
+                    try {
+                        tasks[i].run();
+                    } catch (Throwable e) {
+                        Thread thread = Thread.currentThread();
+                        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                    }
+                }
+            }
+        }
+    }
+
+    // 开启统计时提交的任务, 记录提交和开始执行的时间
+    private static final class TimedTask implements Runnable {
+        private final Runnable task;
+        private final long submitNanos;
+        private long startNanos;                // 只在执行任务的线程中读写
+
+        private TimedTask(Runnable task, long submitNanos) {
+            this.task = task;
+            this.submitNanos = submitNanos;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    // 线程的提交状态, 每个线程一个实例, 只在本线程中读写
+    private static final class Submitter {
+        private boolean worker;                 // 是否是线程池自己的线程
+        private Runnable submitting;            // 正在传给super.execute的任务
+    }
+
+    private static final int GRAINS_PER_TASK = 8;       // 每个BatchTask平均领取的次数, 领取越多负载越均衡
+
+    protected final CountLatch numRunningTasks;
+
+    private final Semaphore inFlight;               // 未限制时为null
+    private final int maxInFlight;
+    private final InFlightPolicy inFlightPolicy;
+    private final ThreadLocal<Submitter> submitter = new ThreadLocal<Submitter>() {
+        @Override
+        protected Submitter initialValue() {
+            return new Submitter();
+        }
+    };
+    private final TaskMetrics metrics = new TaskMetrics(this);
 
     public CountingThreadPoolExecutor(int corePoolSize, int maximumPoolSize,
                                       long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, new CountLatch(0));
+    }
+
+    /**
+     * @param numRunningTasks 任务计数, 大量线程递归派生小任务时可使用StripedCountLatch减少竞争
+     */
+    public CountingThreadPoolExecutor(int corePoolSize, int maximumPoolSize,
+                                      long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue,
+                                      CountLatch numRunningTasks) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, numRunningTasks, 0, null);
+    }
+
+    /**
+     * @param numRunningTasks 任务计数, 大量线程递归派生小任务时可使用StripedCountLatch减少竞争
+     * @param maxInFlight 已提交未完成的最大任务数, 0表示不限制
+     * @param inFlightPolicy 达到maxInFlight时的处理方式
+     */
+    public CountingThreadPoolExecutor(int corePoolSize, int maximumPoolSize,
+                                      long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue,
+                                      CountLatch numRunningTasks, int maxInFlight, InFlightPolicy inFlightPolicy) {
         super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
+
+        if (numRunningTasks == null) {
+            throw new IllegalArgumentException("numRunningTasks is null");
+        }
+
+        if (maxInFlight < 0) {
+            throw new IllegalArgumentException("maxInFlight must not be negative: " + maxInFlight);
+        }
+
+        if (maxInFlight > 0 && inFlightPolicy == null) {
+            throw new IllegalArgumentException("inFlightPolicy is null");
+        }
+
+        this.numRunningTasks = numRunningTasks;
+        this.maxInFlight = maxInFlight;
+        this.inFlightPolicy = maxInFlight > 0 ? inFlightPolicy : null;
+        this.inFlight = maxInFlight > 0 ? new Semaphore(maxInFlight) : null;
+
+        setRejectedExecutionHandler(super.getRejectedExecutionHandler());
     }
 
+    // 以countKey增减计数, afterExecute收到的是传给super.execute的同一个对象
     @Override
     public void execute(Runnable command) {
-        numRunningTasks.increment();
-        super.execute(command);
+        if (command == null) {
+            throw new NullPointerException();
+        }
+
+        // 拒绝策略重新提交的任务重新计时
+        if (command instanceof TimedTask) {
+            command = ((TimedTask) command).task;
+        }
+
+        if (inFlight != null && !inFlight.tryAcquire()) {
+            if (inFlightPolicy == InFlightPolicy.CALLER_RUNS || submitter.get().worker) {
+                runInline(command);
+                return;
+            }
+
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("interrupted while waiting for in-flight tasks", e);
+            }
+        }
+
+        Runnable task = timed(TaskGroup.bind(command));
+        numRunningTasks.increment(countKey(task));
+        enqueue(task);
+    }
+
+    /**
+     * 在提交任务的线程中直接执行. 与提交的任务一样加入当前任务组并计数,
+     * 执行期间提交的子任务结束时, 组和线程池的计数不会在任务自身结束前降为0
+     */
+    private void runInline(Runnable command) {
+        Runnable task = TaskGroup.bind(command);
+        Object key = countKey(task);
+        numRunningTasks.increment(key);
+        try {
+            task.run();
+        } finally {
+            numRunningTasks.decrement(key);
+        }
+    }
+
+    /**
+     * 已计数的任务交给super.execute. 线程池关闭时super.execute会先remove再拒绝同一个任务,
+     * remove时不减少计数, 由拒绝策略减少, 每个任务只减少一次
+     */
+    private void enqueue(Runnable task) {
+        Submitter state = submitter.get();
+        Runnable previous = state.submitting;      // 拒绝策略中重新提交时嵌套调用
+        state.submitting = task;
+        try {
+            super.execute(task);
+        } finally {
+            state.submitting = previous;
+        }
+    }
+
+    private Runnable timed(Runnable task) {
+        if (!metrics.isEnabled()) {
+            return task;
+        }
+
+        metrics.recordSubmit();
+        return new TimedTask(task, System.nanoTime());
+    }
+
+    private static Runnable untimed(Runnable task) {
+        return task instanceof TimedTask ? ((TimedTask) task).task : task;
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        if (inFlight != null) {
+            submitter.get().worker = true;
+        }
+
+        if (r instanceof TimedTask) {
+            TimedTask task = (TimedTask) r;
+            task.startNanos = System.nanoTime();
+            metrics.recordQueueWait(task.startNanos - task.submitNanos);
+        }
+        super.beforeExecute(t, r);
     }
 
     @Override
     protected void afterExecute(Runnable r, Throwable t) {
-        numRunningTasks.decrement();
+        if (r instanceof TimedTask) {
+            metrics.recordRun(System.nanoTime() - ((TimedTask) r).startNanos, t != null);
+        }
+
+        finished(r);
         super.afterExecute(r, t);
     }
 
+    /**
+     * 任务统计, 默认关闭. executeAll的每个批处理任务记为一个任务
+     */
+    public TaskMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 批量提交任务, 适用于一次产生大量子任务的情况.
+     *
+     * 任务分给不超过线程数个批处理任务, 由线程池的线程每次领取一段依次执行, 计数只增加一次, 入队次数不超过线程数.
+     * 单个任务抛出的异常交给线程的UncaughtExceptionHandler, 不影响同批的其他任务.
+     * 限制maxInFlight时批处理任务逐个以execute提交. 部分批处理任务被拒绝时其余的批处理任务仍执行全部任务
+     */
+    public void executeAll(Collection<? extends Runnable> commands) {
+        Runnable[] tasks = commands.toArray(new Runnable[0]);
+        for (Runnable task : tasks) {
+            if (task == null) {
+                throw new NullPointerException();
+            }
+        }
+
+        if (tasks.length == 0) {
+            return;
+        }
+
+        int parallelism = Math.min(tasks.length, Math.max(1, Math.min(getMaximumPoolSize(),
+                Math.max(getCorePoolSize(), Runtime.getRuntime().availableProcessors()))));
+        Batch batch = new Batch(tasks, Math.max(1, tasks.length / (parallelism * GRAINS_PER_TASK)));
+
+        if (inFlight != null) {
+            for (int i = 0; i < parallelism; i++) {
+                execute(new BatchTask(batch));
+            }
+            return;
+        }
+
+        Runnable[] batchTasks = new Runnable[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            batchTasks[i] = timed(TaskGroup.bind(new BatchTask(batch)));
+        }
+        numRunningTasks.add(batch, parallelism);
+
+        int submitted = 0;
+        try {
+            for (; submitted < parallelism; submitted++) {
+                enqueue(batchTasks[submitted]);
+            }
+        } finally {
+            // 拒绝策略抛出异常时, 未提交的批处理任务减少计数
+            for (int i = submitted + 1; i < parallelism; i++) {
+                cancelled(batchTasks[i]);
+            }
+        }
+    }
+
+    // 计数的key, 同批的BatchTask使用同一个key
+    private static Object countKey(Runnable task) {
+        Runnable command = TaskGroup.unwrap(untimed(task));
+        return command instanceof BatchTask ? ((BatchTask) command).batch : task;
+    }
+
+    // 任务执行完毕或不再执行
+    private void finished(Runnable task) {
+        numRunningTasks.decrement(countKey(task));
+        if (inFlight != null) {
+            inFlight.release();
+        }
+    }
+
+    // 任务不再执行
+    private void cancelled(Runnable task) {
+        TaskGroup.discard(untimed(task));
+        finished(task);
+    }
+
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        if (handler == null) {
+            throw new NullPointerException();
+        }
+
+        if (handler instanceof CountingRejectedHandler) {
+            handler = ((CountingRejectedHandler) handler).handler;
+        }
+        super.setRejectedExecutionHandler(new CountingRejectedHandler(handler));
+    }
+
+    @Override
+    public RejectedExecutionHandler getRejectedExecutionHandler() {
+        return ((CountingRejectedHandler) super.getRejectedExecutionHandler()).handler;
+    }
+
+    /**
+     * 从队列中移除任务并减少计数. 在任务组中提交的任务和开启统计时提交的任务, 队列中保存的是包装后的任务, 不能以原任务移除
+     */
+    @Override
+    public boolean remove(Runnable task) {
+        boolean removed = super.remove(task);
+        if (removed && submitter.get().submitting != task) {
+            cancelled(task);
+        }
+        return removed;
+    }
+
+    // 移除已取消的Future并减少计数. 逐个移除, 只有本次移除成功的任务才减少计数, 不调用super.purge
+    @Override
+    public void purge() {
+        for (Runnable r : getQueue().toArray(new Runnable[0])) {
+            Runnable command = TaskGroup.unwrap(untimed(r));
+            if (command instanceof Future && ((Future<?>) command).isCancelled() && super.remove(r)) {
+                cancelled(r);
+            }
+        }
+    }
+
+    /**
+     * 返回的未执行任务已减少计数
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> tasks = super.shutdownNow();
+        for (Runnable task : tasks) {
+            cancelled(task);
+        }
+        return tasks;
+    }
+
+    // 已提交未完成的最大任务数, 0表示不限制
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public InFlightPolicy getInFlightPolicy() {
+        return inFlightPolicy;
+    }
+
     /**
      * Awaits the completion of all spawned tasks.
      */
+    @Override
     public void awaitCompletion() throws InterruptedException {
         numRunningTasks.awaitZero();
     }
@@ -40,6 +431,7 @@ public class CountingThreadPoolExecutor extends ThreadPoolExecutor {
     /**
      * Awaits the completion of all spawned tasks.
      */
+    @Override
     public void awaitCompletion(long timeout, TimeUnit unit)
             throws InterruptedException {
         numRunningTasks.awaitZero(timeout, unit);
@@ -48,6 +440,7 @@ public class CountingThreadPoolExecutor extends ThreadPoolExecutor {
     /**
      * 等待所有任务完成后关闭线程池
      */
+    @Override
     public void awaitShutdown() {
         boolean isRunning = true;
 
@@ -66,4 +459,3 @@ public class CountingThreadPoolExecutor extends ThreadPoolExecutor {
         }
     }
 }
-
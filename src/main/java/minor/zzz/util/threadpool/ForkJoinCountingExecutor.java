@@ -0,0 +1,185 @@
+package minor.zzz.util.threadpool;
+
+import minor.zzz.util.threadpool.support.CountLatch;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于ForkJoinPool的计数线程池, 适用于递归创建大量任务的情况.
+ *
+ * 每个工作线程有自己的任务队列, 空闲线程从其他线程的队列中窃取任务; 在工作线程中提交的任务放入该线程自己的队列,
+ * 后进先出, 子任务优先由创建它的线程执行. 外部线程提交的任务放入共享的提交队列.
+ * 与CountingThreadPoolExecutor一样可以等待所有任务(包括任务中再提交的任务)执行完毕
+ */
+public class ForkJoinCountingExecutor extends AbstractExecutorService implements CountingExecutor {
+
+    // 执行任务并在结束时减少计数
+    @SuppressWarnings("serial")
+    private final class CountedTask extends ForkJoinTask<Void> {
+        private final Runnable command;
+
+        private CountedTask(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public Void getRawResult() {
+            return null;
+        }
+
+        @Override
+        protected void setRawResult(Void value) {
+        }
+
+        // 与ThreadPoolExecutor一致, 任务抛出的异常交给线程的UncaughtExceptionHandler
+        @Override
+        protected boolean exec() {
+            try {
+                command.run();
+            } catch (Throwable e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            } finally {
+                numRunningTasks.decrement(this);
+            }
+
+            return true;
+        }
+    }
+
+    protected final CountLatch numRunningTasks;
+
+    private final ForkJoinPool pool;
+
+    public ForkJoinCountingExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ForkJoinCountingExecutor(int parallelism) {
+        this(parallelism, new CountLatch(0));
+    }
+
+    /**
+     * @param parallelism 工作线程数
+     * @param numRunningTasks 任务计数, 大量线程递归派生小任务时可使用StripedCountLatch减少竞争
+     */
+    public ForkJoinCountingExecutor(int parallelism, CountLatch numRunningTasks) {
+        if (numRunningTasks == null) {
+            throw new IllegalArgumentException("numRunningTasks is null");
+        }
+
+        this.numRunningTasks = numRunningTasks;
+        this.pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, false);
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    // 工作线程中提交的任务放入当前线程的队列, 其他线程提交的任务放入共享队列
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+
+        if (pool.isShutdown()) {
+            throw new RejectedExecutionException("executor has been shut down");
+        }
+
+        Runnable bound = TaskGroup.bind(command);
+        CountedTask task = new CountedTask(bound);
+        numRunningTasks.increment(task);
+
+        try {
+            if (ForkJoinTask.getPool() == pool) {
+                task.fork();
+            } else {
+                pool.execute(task);
+            }
+        } catch (RuntimeException | Error e) {
+            numRunningTasks.decrement(task);
+            TaskGroup.discard(bound);
+            throw e;
+        }
+    }
+
+    /**
+     * Awaits the completion of all spawned tasks.
+     */
+    @Override
+    public void awaitCompletion() throws InterruptedException {
+        numRunningTasks.awaitZero();
+    }
+
+    /**
+     * Awaits the completion of all spawned tasks.
+     */
+    @Override
+    public void awaitCompletion(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        numRunningTasks.awaitZero(timeout, unit);
+    }
+
+    /**
+     * 等待所有任务完成后关闭线程池
+     */
+    @Override
+    public void awaitShutdown() {
+        boolean isRunning = true;
+
+        try {
+            // 等待直到任务全部完成
+            while (isRunning && !Thread.currentThread().isInterrupted()) {
+                try {
+                    awaitCompletion();
+                    isRunning = false;
+                } catch (InterruptedException ignore) {
+                    Thread.interrupted();			// 重置中断状态
+                }
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * 取消所有未执行的任务; ForkJoinPool不返回未执行的任务, 返回空列表.
+     * 被取消的任务不会减少计数, 之后不能再等待任务完成
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        pool.shutdownNow();
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return pool.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    public String toString() {
+        return super.toString() + "[" + pool + ", tasks = " + numRunningTasks.getCount() + "]";
+    }
+}
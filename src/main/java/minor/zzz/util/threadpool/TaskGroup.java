@@ -0,0 +1,208 @@
+package minor.zzz.util.threadpool;
+
+import minor.zzz.util.threadpool.support.CountLatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务组, 多个作业共用一个CountingExecutor时分别等待各自的任务完成.
+ *
+ * 以CountingExecutor.execute(command, group)提交的任务属于group, 组内任务执行时提交的任务(无论是否指定组)
+ * 也属于该组, 因此递归创建的任务都计入提交根任务时指定的组. 子组的任务同时计入所有上级组.
+ * 子任务在父任务结束之前加入组, 组的计数为0时组内所有任务(包括递归创建的)都已完成
+ */
+public class TaskGroup {
+
+    private static final ThreadLocal<TaskGroup> CURRENT = new ThreadLocal<>();
+
+    // 执行任务时设置当前组, 结束时减少组的计数
+    private static final class GroupTask implements Runnable {
+        private final TaskGroup group;
+        private final Runnable command;
+        private volatile boolean started = false;
+
+        private GroupTask(TaskGroup group, Runnable command) {
+            this.group = group;
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            started = true;
+            TaskGroup previous = swap(group);
+            try {
+                command.run();
+            } finally {
+                swap(previous);
+                group.exit();
+            }
+        }
+    }
+
+    private final String name;
+    private final TaskGroup parent;
+    private final CountLatch numRunningTasks = new CountLatch(0);
+    private List<CompletableFuture<Void>> quiescence = new ArrayList<>();     // 等待计数为0的future, 由this保护
+
+    public TaskGroup(String name) {
+        this(name, null);
+    }
+
+    /**
+     * @param parent 上级组, 本组的任务同时计入上级组, 可为null
+     */
+    public TaskGroup(String name, TaskGroup parent) {
+        if (name == null) {
+            throw new IllegalArgumentException("name is null");
+        }
+
+        this.name = name;
+        this.parent = parent;
+    }
+
+    public TaskGroup newChild(String name) {
+        return new TaskGroup(name, this);
+    }
+
+    /**
+     * 当前线程正在执行的任务所属的组, 不在组内任务中时返回null
+     */
+    public static TaskGroup current() {
+        return CURRENT.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public TaskGroup getParent() {
+        return parent;
+    }
+
+    // 已提交未完成的任务数, 包括子组的任务
+    public long getCount() {
+        return numRunningTasks.getCount();
+    }
+
+    /**
+     * Awaits the completion of all tasks of this group and its children.
+     */
+    public void awaitCompletion() throws InterruptedException {
+        numRunningTasks.awaitZero();
+    }
+
+    /**
+     * Awaits the completion of all tasks of this group and its children.
+     */
+    public void awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        numRunningTasks.awaitZero(timeout, unit);
+    }
+
+    /**
+     * 计数下一次为0时完成的future, 当前计数为0时返回已完成的future, 因此应在提交第一个任务之后调用.
+     * future在完成最后一个任务的线程中完成, 耗时的后续操作应使用thenRunAsync等方法交给其他线程执行
+     */
+    public CompletableFuture<Void> onQuiescence() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        synchronized (this) {
+            if (getCount() != 0) {
+                quiescence.add(future);
+                return future;
+            }
+        }
+
+        future.complete(null);
+        return future;
+    }
+
+    // 计数增加到本组和所有上级组
+    private void enter() {
+        for (TaskGroup group = this; group != null; group = group.parent) {
+            group.numRunningTasks.increment();
+        }
+    }
+
+    // 先减少下级组的计数, 上级组计数为0时下级组一定已为0
+    private void exit() {
+        for (TaskGroup group = this; group != null; group = group.parent) {
+            group.numRunningTasks.decrement();
+            if (group.getCount() == 0) {
+                group.quiesce();
+            }
+        }
+    }
+
+    // 在锁外完成future, 后续操作不在锁内执行
+    private void quiesce() {
+        List<CompletableFuture<Void>> futures;
+
+        synchronized (this) {
+            if (getCount() != 0 || quiescence.isEmpty()) {
+                return;
+            }
+
+            futures = quiescence;
+            quiescence = new ArrayList<>();
+        }
+
+        for (CompletableFuture<Void> future : futures) {
+            future.complete(null);
+        }
+    }
+
+    /**
+     * 当前线程在组内任务中时, 把任务加入该组并返回设置组的任务, 否则返回任务本身.
+     * 重新提交bind返回的任务时(比如拒绝策略重新提交), 任务再次加入它原来的组.
+     * 返回的任务未执行时须调用discard
+     */
+    static Runnable bind(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+
+        if (command instanceof GroupTask) {
+            GroupTask task = (GroupTask) command;
+            task.group.enter();
+            return new GroupTask(task.group, task.command);
+        }
+
+        TaskGroup group = CURRENT.get();
+        if (group == null) {
+            return command;
+        }
+
+        group.enter();
+        return new GroupTask(group, command);
+    }
+
+    // bind返回的任务被拒绝或取消时减少组的计数, 已开始执行的任务结束时自己减少
+    static void discard(Runnable task) {
+        if (task instanceof GroupTask && !((GroupTask) task).started) {
+            ((GroupTask) task).group.exit();
+        }
+    }
+
+    // bind返回的任务对应的原任务
+    static Runnable unwrap(Runnable task) {
+        return task instanceof GroupTask ? ((GroupTask) task).command : task;
+    }
+
+    // 设置当前线程的组, 返回原来的组
+    static TaskGroup swap(TaskGroup group) {
+        TaskGroup previous = CURRENT.get();
+        if (group == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(group);
+        }
+        return previous;
+    }
+
+    public String toString() {
+        return super.toString() + "[" + name + ", Count = " + getCount() + "]";
+    }
+}
@@ -0,0 +1,206 @@
+package minor.zzz.util.threadpool;
+
+import minor.zzz.util.threadpool.support.LatencyHistogram;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CountingThreadPoolExecutor的任务统计: 排队等待时间和执行时间的直方图, 提交、完成、失败、拒绝的任务数,
+ * 以及已提交未完成的任务数、队列长度、活动线程数等即时值. 可生成快照, 也可注册为MBean.
+ *
+ * 默认关闭, 关闭时execute不取时间也不记录; 开启后每个任务取三次System.nanoTime, 包装一次任务.
+ * 用法: executor.getMetrics().setEnabled(true); executor.getMetrics().register("crawler");
+ */
+public class TaskMetrics implements TaskMetricsMBean {
+
+    public static final String DOMAIN = "minor.zzz.util.threadpool";
+
+    private final CountingThreadPoolExecutor executor;
+
+    private volatile boolean enabled = false;
+    private volatile long startNanos = System.nanoTime();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+
+    private ObjectName objectName;
+
+    TaskMetrics(CountingThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    // 以DOMAIN:type=CountingExecutor,name=<name>注册到平台MBeanServer
+    public synchronized void register(String name) {
+        try {
+            register(new ObjectName(DOMAIN + ":type=CountingExecutor,name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            throw new IllegalArgumentException("illegal mbean name: " + name, e);
+        }
+    }
+
+    public synchronized void register(ObjectName objectName) {
+        if (this.objectName != null) {
+            throw new IllegalStateException("already registered as " + this.objectName);
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to register " + objectName, e);
+        }
+
+        this.objectName = objectName;
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to unregister " + objectName, e);
+        }
+
+        objectName = null;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // 关闭后已提交的任务仍记录到执行结束
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    void recordSubmit() {
+        submitted.increment();
+    }
+
+    void recordReject() {
+        rejected.increment();
+    }
+
+    void recordQueueWait(long nanos) {
+        queueWait.record(nanos);
+    }
+
+    void recordRun(long nanos, boolean failure) {
+        runTime.record(nanos);
+        completed.increment();
+        if (failure) {
+            failed.increment();
+        }
+    }
+
+    // 计数和直方图分别读取, 与并发的记录之间不是原子的
+    public TaskMetricsSnapshot snapshot() {
+        return new TaskMetricsSnapshot(System.nanoTime() - startNanos,
+                submitted.sum(), completed.sum(), failed.sum(), rejected.sum(),
+                executor.numRunningTasks.getCount(), executor.getQueue().size(), executor.getActiveCount(),
+                queueWait.snapshot(), runTime.snapshot());
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    @Override
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    @Override
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    @Override
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return executor.numRunningTasks.getCount();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public double getThroughput() {
+        return snapshot().getThroughput();
+    }
+
+    @Override
+    public long getQueueWaitP50Micros() {
+        return micros(queueWait.snapshot().getPercentileNanos(50));
+    }
+
+    @Override
+    public long getQueueWaitP99Micros() {
+        return micros(queueWait.snapshot().getPercentileNanos(99));
+    }
+
+    @Override
+    public long getQueueWaitMaxMicros() {
+        return micros(queueWait.snapshot().getMaxNanos());
+    }
+
+    @Override
+    public long getRunTimeP50Micros() {
+        return micros(runTime.snapshot().getPercentileNanos(50));
+    }
+
+    @Override
+    public long getRunTimeP99Micros() {
+        return micros(runTime.snapshot().getPercentileNanos(99));
+    }
+
+    @Override
+    public long getRunTimeMaxMicros() {
+        return micros(runTime.snapshot().getMaxNanos());
+    }
+
+    @Override
+    public String getSnapshot() {
+        return snapshot().toString();
+    }
+
+    @Override
+    public void reset() {
+        submitted.reset();
+        completed.reset();
+        failed.reset();
+        rejected.reset();
+        queueWait.reset();
+        runTime.reset();
+        startNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,43 @@
+package minor.zzz.util.threadpool;
+
+/**
+ * {@link TaskMetrics}的JMX接口, 计数从创建或上次reset开始累计, 耗时单位为微秒
+ */
+public interface TaskMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getSubmitted();
+
+    long getCompleted();
+
+    long getFailed();
+
+    long getRejected();
+
+    long getInFlight();
+
+    int getQueueSize();
+
+    int getActiveThreads();
+
+    double getThroughput();
+
+    long getQueueWaitP50Micros();
+
+    long getQueueWaitP99Micros();
+
+    long getQueueWaitMaxMicros();
+
+    long getRunTimeP50Micros();
+
+    long getRunTimeP99Micros();
+
+    long getRunTimeMaxMicros();
+
+    String getSnapshot();
+
+    void reset();
+}
@@ -0,0 +1,102 @@
+package minor.zzz.util.threadpool;
+
+import minor.zzz.util.threadpool.support.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 某一时刻的线程池任务统计
+ */
+public final class TaskMetricsSnapshot {
+
+    private final long elapsedNanos;
+    private final long submitted;
+    private final long completed;
+    private final long failed;
+    private final long rejected;
+    private final long inFlight;
+    private final int queueSize;
+    private final int activeThreads;
+    private final LatencyHistogram.Snapshot queueWait;
+    private final LatencyHistogram.Snapshot runTime;
+
+    TaskMetricsSnapshot(long elapsedNanos, long submitted, long completed, long failed, long rejected,
+                        long inFlight, int queueSize, int activeThreads,
+                        LatencyHistogram.Snapshot queueWait, LatencyHistogram.Snapshot runTime) {
+        this.elapsedNanos = elapsedNanos;
+        this.submitted = submitted;
+        this.completed = completed;
+        this.failed = failed;
+        this.rejected = rejected;
+        this.inFlight = inFlight;
+        this.queueSize = queueSize;
+        this.activeThreads = activeThreads;
+        this.queueWait = queueWait;
+        this.runTime = runTime;
+    }
+
+    // 从创建或上次reset到生成快照的时间
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    // 执行完毕的任务数, 含抛出异常的任务
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    // 已提交未完成的任务数
+    public long getInFlight() {
+        return inFlight;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    // 每秒完成的任务数
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : completed * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    // 从execute到开始执行的等待时间
+    public LatencyHistogram.Snapshot getQueueWait() {
+        return queueWait;
+    }
+
+    public LatencyHistogram.Snapshot getRunTime() {
+        return runTime;
+    }
+
+    @Override
+    public String toString() {
+        return "TaskMetricsSnapshot[elapsed=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms"
+                + ", submitted=" + submitted
+                + ", completed=" + completed
+                + ", failed=" + failed
+                + ", rejected=" + rejected
+                + ", inFlight=" + inFlight
+                + ", queueSize=" + queueSize
+                + ", activeThreads=" + activeThreads
+                + ", throughput=" + String.format("%.1f/s", getThroughput())
+                + ", queueWait={" + queueWait + "}"
+                + ", runTime={" + runTime + "}"
+                + ']';
+    }
+}
@@ -0,0 +1,187 @@
+package minor.zzz.util.threadpool;
+
+import minor.zzz.util.threadpool.support.CountLatch;
+import minor.zzz.util.threadpool.support.VirtualThreads;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个任务一个虚拟线程的计数线程池, 适用于任务中有阻塞I/O(读数据库, 写文件)的情况.
+ *
+ * 同时执行的任务数不超过maxConcurrency, 超出的任务在各自的虚拟线程中等待许可, 不占用平台线程.
+ * 许可在任务开始执行时获取, 任务中提交子任务不会因为许可用完而阻塞.
+ * 运行在Java 21以下版本时退化为maxConcurrency个平台线程的线程池
+ */
+public class VirtualThreadCountingExecutor extends AbstractExecutorService implements CountingExecutor {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    // 获取许可后执行任务, 结束时减少计数
+    private final class PermitTask implements Runnable {
+        private final Runnable command;
+
+        private PermitTask(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                // shutdownNow中断了等待许可的任务, 任务不再执行
+                TaskGroup.discard(command);
+                numRunningTasks.decrement(command);
+                return;
+            }
+
+            try {
+                command.run();
+            } finally {
+                permits.release();
+                numRunningTasks.decrement(command);
+            }
+        }
+    }
+
+    protected final CountLatch numRunningTasks;
+
+    private final int maxConcurrency;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+
+    public VirtualThreadCountingExecutor(int maxConcurrency) {
+        this(maxConcurrency, new CountLatch(0));
+    }
+
+    /**
+     * @param maxConcurrency 同时执行的最大任务数
+     * @param numRunningTasks 任务计数, 大量线程递归派生小任务时可使用StripedCountLatch减少竞争
+     */
+    public VirtualThreadCountingExecutor(int maxConcurrency, CountLatch numRunningTasks) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+
+        if (numRunningTasks == null) {
+            throw new IllegalArgumentException("numRunningTasks is null");
+        }
+
+        this.maxConcurrency = maxConcurrency;
+        this.numRunningTasks = numRunningTasks;
+        this.permits = new Semaphore(maxConcurrency);
+
+        if (VirtualThreads.isSupported()) {
+            this.executor = VirtualThreads.newThreadPerTaskExecutor("counting-virtual-");
+        } else {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrency, maxConcurrency,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+        }
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    // 是否使用虚拟线程执行任务
+    public boolean isVirtual() {
+        return VirtualThreads.isSupported();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Runnable task = TaskGroup.bind(command);
+        numRunningTasks.increment(task);
+
+        try {
+            executor.execute(new PermitTask(task));
+        } catch (RejectedExecutionException e) {
+            TaskGroup.discard(task);
+            numRunningTasks.decrement(task);
+            throw e;
+        }
+    }
+
+    /**
+     * Awaits the completion of all spawned tasks.
+     */
+    @Override
+    public void awaitCompletion() throws InterruptedException {
+        numRunningTasks.awaitZero();
+    }
+
+    /**
+     * Awaits the completion of all spawned tasks.
+     */
+    @Override
+    public void awaitCompletion(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        numRunningTasks.awaitZero(timeout, unit);
+    }
+
+    /**
+     * 等待所有任务完成后关闭线程池
+     */
+    @Override
+    public void awaitShutdown() {
+        boolean isRunning = true;
+
+        try {
+            // 等待直到任务全部完成
+            while (isRunning && !Thread.currentThread().isInterrupted()) {
+                try {
+                    awaitCompletion();
+                    isRunning = false;
+                } catch (InterruptedException ignore) {
+                    Thread.interrupted();			// 重置中断状态
+                }
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 中断所有任务. 使用虚拟线程时等待许可的任务不再执行, 并减少计数;
+     * 使用平台线程时返回未执行的任务, 这些任务不会减少计数
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    public String toString() {
+        return super.toString() + "[" + (isVirtual() ? "virtual" : "platform") + ", max concurrency = " + maxConcurrency
+                + ", running = " + (maxConcurrency - permits.availablePermits())
+                + ", tasks = " + numRunningTasks.getCount() + "]";
+    }
+}
@@ -24,7 +24,7 @@ public class CountLatch {
             // increment count
             for (;;) {
                 int c = getState();
-                int nextc = c + 1;
+                int nextc = c + acquires;
                 if (compareAndSetState(c, nextc))
                     return 1;
             }
@@ -66,6 +66,35 @@ public class CountLatch {
         sync.releaseShared(1);
     }
 
+    /**
+     * Increments the count on behalf of {@code key}; must be paired with
+     * {@link #decrement(Object)} on the same key. Subclasses may use the key
+     * to spread the count, here it is ignored.
+     */
+    public void increment(Object key) {
+        increment();
+    }
+
+    public void decrement(Object key) {
+        decrement();
+    }
+
+    /**
+     * Adds {@code n} to the count on behalf of {@code key} in one step; must be
+     * paired with {@code n} calls of {@link #decrement(Object)} on the same key.
+     */
+    public void add(Object key, int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive: " + n);
+        }
+
+        sync.acquireNonBlocking(n);
+    }
+
+    public long getCount() {
+        return sync.getCount();
+    }
+
     public String toString() {
         return super.toString() + "[Count = " + sync.getCount() + "]";
     }
@@ -0,0 +1,150 @@
+package minor.zzz.util.threadpool.support;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+
+/**
+ * 分段计数的CountLatch, 适用于大量线程频繁增减计数的情况.
+ *
+ * 计数分散在多个分段中, 每个分段有单调递增的增加次数和减少次数两个计数器, 各占一个缓存行;
+ * 增减计数只修改一个分段, 不在同一个变量上竞争. 计数 = 所有分段的增加次数 - 减少次数,
+ * 先读全部减少次数再读全部增加次数, 结果为0时在读取期间的某一时刻计数确实为0.
+ *
+ * 只有在有线程等待时才检查计数是否为0并唤醒等待线程. increment(key)/decrement(key)须对同一个key成对调用,
+ * 同一个key落在同一个分段, 只在分段的增减次数相等时才检查全部分段
+ */
+public class StripedCountLatch extends CountLatch {
+
+    private static final int PADDING = 16;                     // 每个计数器占128字节, 相邻缓存行预取也不会伪共享
+
+    @SuppressWarnings("serial")
+    private final class Sync extends AbstractQueuedSynchronizer {
+
+        protected int tryAcquireShared(int acquires) {
+            return isZero() ? 1 : -1;
+        }
+
+        protected boolean tryReleaseShared(int releases) {
+            return isZero();
+        }
+    }
+
+    private final AtomicLongArray counters;
+    private final int mask;
+    private final Sync sync = new Sync();
+
+    // 分段数为CPU数的2倍
+    public StripedCountLatch() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param stripes 分段数, 向上取整为2的幂
+     */
+    public StripedCountLatch(int stripes) {
+        super(0);
+
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be positive: " + stripes);
+        }
+
+        int n = Integer.highestOneBit(stripes);
+        if (n < stripes) {
+            n <<= 1;
+        }
+
+        this.mask = n - 1;
+        this.counters = new AtomicLongArray((2 * n + 1) * PADDING);   // 首个缓存行空出, 与数组头隔开
+    }
+
+    private static int adds(int stripe) {
+        return (2 * stripe + 1) * PADDING;
+    }
+
+    private static int subs(int stripe) {
+        return (2 * stripe + 2) * PADDING;
+    }
+
+    private int stripe(Object key) {
+        int h = System.identityHashCode(key) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    // 在读取期间的某一时刻计数为0
+    private boolean isZero() {
+        return getCount() == 0;
+    }
+
+    // 先读减少次数再读增加次数, 结果不小于读取期间某一时刻的计数
+    @Override
+    public long getCount() {
+        long subs = 0;
+        for (int i = 0; i <= mask; i++) {
+            subs += counters.get(subs(i));
+        }
+
+        long adds = 0;
+        for (int i = 0; i <= mask; i++) {
+            adds += counters.get(adds(i));
+        }
+
+        return adds - subs;
+    }
+
+    @Override
+    public void awaitZero() throws InterruptedException {
+        sync.acquireSharedInterruptibly(1);
+    }
+
+    @Override
+    public boolean awaitZero(long timeout, TimeUnit unit) throws InterruptedException {
+        return sync.tryAcquireSharedNanos(1, unit.toNanos(timeout));
+    }
+
+    // 按当前线程选择分段
+    @Override
+    public void increment() {
+        counters.incrementAndGet(adds(stripe(Thread.currentThread())));
+    }
+
+    // 与increment()可在不同线程中调用, 有线程等待时每次都检查全部分段
+    @Override
+    public void decrement() {
+        counters.incrementAndGet(subs(stripe(Thread.currentThread())));
+
+        // 先更新计数再检查等待线程, 等待线程先入队再检查计数, 两者至少有一方能看到对方
+        if (sync.hasQueuedThreads()) {
+            sync.releaseShared(1);
+        }
+    }
+
+    @Override
+    public void increment(Object key) {
+        counters.incrementAndGet(adds(stripe(key)));
+    }
+
+    @Override
+    public void add(Object key, int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive: " + n);
+        }
+
+        counters.addAndGet(adds(stripe(key)), n);
+    }
+
+    @Override
+    public void decrement(Object key) {
+        int stripe = stripe(key);
+        long subs = counters.incrementAndGet(subs(stripe));
+
+        // 计数为0时所有分段的增减次数都相等, 本分段不相等时不必检查其他分段
+        if (sync.hasQueuedThreads() && subs == counters.get(adds(stripe))) {
+            sync.releaseShared(1);
+        }
+    }
+
+    public String toString() {
+        return getClass().getName() + "@" + Integer.toHexString(hashCode()) + "[Count = " + getCount() + "]";
+    }
+}
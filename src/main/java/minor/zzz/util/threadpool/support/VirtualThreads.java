@@ -0,0 +1,27 @@
+package minor.zzz.util.threadpool.support;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 虚拟线程支持. Java 21及以上版本由多版本jar中META-INF/versions/21下的同名类替换
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    // 当前运行环境是否支持虚拟线程
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * 每个任务一个虚拟线程的线程池
+     *
+     * @param namePrefix 线程名前缀, 后接序号
+     * @throws UnsupportedOperationException 不支持虚拟线程时
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        throw new UnsupportedOperationException("virtual threads require Java 21 or later");
+    }
+}
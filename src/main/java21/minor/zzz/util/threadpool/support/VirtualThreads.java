@@ -0,0 +1,25 @@
+package minor.zzz.util.threadpool.support;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程支持, Java 21及以上版本
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return true;
+    }
+
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        if (namePrefix == null) {
+            throw new IllegalArgumentException("namePrefix is null");
+        }
+
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+    }
+}
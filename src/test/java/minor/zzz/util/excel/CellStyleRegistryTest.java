@@ -0,0 +1,127 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.Data;
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CellStyleRegistryTest {
+
+    @Test
+    public void stylesAreCreatedOncePerRoleTypeAndFormat() {
+        HSSFWorkbook workbook = new HSSFWorkbook();
+        int builtIn = workbook.getNumCellStyles();
+        CellStyleRegistry styles = new CellStyleRegistry(workbook);
+
+        CellStyle price = styles.body(DataType.DOUBLE, "#,##0.00", false);
+        assertSame(price, styles.body(DataType.DOUBLE, "#,##0.00", false));
+        assertSame(styles.head(), styles.head());
+        assertSame(styles.total(DataType.INTEGER, null), styles.total(DataType.INTEGER, null));
+
+        // 用途、数据类型、格式任一不同时是不同的样式
+        assertNotSame(price, styles.body(DataType.DOUBLE, "0.0%", false));
+        assertNotSame(price, styles.body(DataType.DOUBLE, "#,##0.00", true));
+        assertNotSame(price, styles.total(DataType.DOUBLE, "#,##0.00"));
+
+        assertEquals(6, styles.size());
+        assertEquals(builtIn + 6, workbook.getNumCellStyles());
+    }
+
+    @Test
+    public void plainBodyCellsHaveNoStyle() {
+        CellStyleRegistry styles = new CellStyleRegistry(new HSSFWorkbook());
+
+        assertNull(styles.body(DataType.STRING, null, false));
+        assertNull(styles.body(DataType.INTEGER, null, false));
+        assertEquals(0, styles.size());
+
+        // 分组单元格需要垂直居中, 没有格式也有样式
+        CellStyle group = styles.body(DataType.STRING, null, true);
+        assertEquals(CellStyle.VERTICAL_CENTER, group.getVerticalAlignment());
+        assertEquals("General", group.getDataFormatString());
+    }
+
+    @Test
+    public void datesUseTheDefaultFormat() {
+        CellStyleRegistry styles = new CellStyleRegistry(new HSSFWorkbook());
+
+        CellStyle date = styles.body(DataType.DATE, null, false);
+        assertEquals(CellStyleRegistry.DEFAULT_DATE_FORMAT, date.getDataFormatString());
+        assertSame(date, styles.body(DataType.DATE, CellStyleRegistry.DEFAULT_DATE_FORMAT, false));
+        assertEquals("yyyy-mm-dd hh:mm", styles.body(DataType.DATE, "yyyy-mm-dd hh:mm", false).getDataFormatString());
+    }
+
+    @Test
+    public void headAndTotalsAreBold() {
+        HSSFWorkbook workbook = new HSSFWorkbook();
+        CellStyleRegistry styles = new CellStyleRegistry(workbook);
+
+        CellStyle head = styles.head();
+        assertEquals(CellStyle.ALIGN_CENTER, head.getAlignment());
+        assertEquals(Font.BOLDWEIGHT_BOLD, workbook.getFontAt(head.getFontIndex()).getBoldweight());
+
+        CellStyle total = styles.total(DataType.DOUBLE, "#,##0.00");
+        assertEquals("#,##0.00", total.getDataFormatString());
+        assertEquals(head.getFontIndex(), total.getFontIndex());
+    }
+
+    private static ReportTable table(int rows) {
+        Head amount = new Head("amount", "数量", DataType.INTEGER, "#,##0");
+        Head price = new Head("price", "单价", DataType.DOUBLE, "0.00");
+
+        ReportTable table = new ReportTable();
+        table.setHead(new ArrayList<>(Arrays.asList(new Head("name", "名称", DataType.STRING), amount, price,
+                new Head("day", "日期", DataType.DATE))));
+        table.setGroupField(new ArrayList<>(Collections.singletonList("name")));
+
+        List<Data> data = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            Data row = new Data();
+            row.put("name", "n" + (i / 3));
+            row.put("amount", i * 1000);
+            row.put("price", i / 4.0);
+            row.put("day", new Date(0));
+            data.add(row);
+        }
+        table.setData(data);
+        return table;
+    }
+
+    private static HSSFWorkbook export(ReportTable table) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.exportExcel(out);
+        return new HSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    // 导出的样式数与行数无关, 各列使用表头指定的格式
+    @Test
+    public void exportedCellsUsePerHeadFormats() throws Exception {
+        HSSFWorkbook small = export(table(3));
+        HSSFWorkbook large = export(table(3000));
+        assertEquals(small.getNumCellStyles(), large.getNumCellStyles());
+
+        Sheet sheet = large.getSheetAt(0);
+        Row row = sheet.getRow(sheet.getLastRowNum());
+        assertEquals("#,##0", row.getCell(1).getCellStyle().getDataFormatString());
+        assertEquals("0.00", row.getCell(2).getCellStyle().getDataFormatString());
+        assertEquals(CellStyleRegistry.DEFAULT_DATE_FORMAT, row.getCell(3).getCellStyle().getDataFormatString());
+    }
+}
@@ -0,0 +1,186 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.Data;
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnarDataTest {
+
+    private static final int NAME = 0;
+    private static final int AMOUNT = 1;
+    private static final int PRICE = 2;
+    private static final int DAY = 3;
+
+    private static List<Head> head() {
+        return new ArrayList<>(Arrays.asList(
+                new Head("name", "名称", DataType.STRING),
+                new Head("amount", "数量", DataType.INTEGER),
+                new Head("price", "单价", DataType.DOUBLE),
+                new Head("day", "日期", DataType.DATE)));
+    }
+
+    private static long millis(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+        return calendar.getTimeInMillis();
+    }
+
+    private static Data row(Object name, Object amount, Object price, Object day) {
+        Data row = new Data();
+        row.put("name", name);
+        row.put("amount", amount);
+        row.put("price", price);
+        row.put("day", day);
+        return row;
+    }
+
+    @Test
+    public void columnsFollowLeafHeads() {
+        ColumnarData data = new ColumnarData(head());
+
+        assertEquals(4, data.columnCount());
+        assertEquals(DAY, data.columnIndex("day"));
+        assertEquals(-1, data.columnIndex("missing"));
+        assertEquals(DataType.DOUBLE, data.dataType(PRICE));
+        assertEquals("amount", data.field(AMOUNT));
+    }
+
+    @Test
+    public void valuesAreConvertedToTheColumnType() {
+        ColumnarData data = new ColumnarData(head(), 1);
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis(2017, 3, 8));
+        int first = data.addRow(row(12, "7", 3, calendar));
+        int second = data.addRow(row(null, 4.0, "2.5", new Date(millis(1969, 12, 31))));
+        int third = data.addRow(row("apple", null, null, null));
+
+        // STRING列按String.valueOf保存, INTEGER列接受数字和整数字符串, DOUBLE列接受数字和数字字符串
+        assertEquals("12", data.getString(first, NAME));
+        assertEquals(7L, data.getLong(first, AMOUNT));
+        assertEquals(3.0, data.getDouble(first, PRICE), 0);
+        assertEquals(millis(2017, 3, 8), data.getLong(first, DAY));
+
+        assertTrue(data.isNull(second, NAME));
+        assertEquals(4L, data.getLong(second, AMOUNT));
+        assertEquals(2.5, data.getDouble(second, PRICE), 0);
+        assertEquals(new Date(millis(1969, 12, 31)), data.getValue(second, DAY));
+
+        assertEquals("apple", data.getValue(third, NAME));
+        assertNull(data.getValue(third, AMOUNT));
+        assertTrue(data.isNull(third, PRICE));
+        assertFalse(data.isNull(first, DAY));
+
+        assertEquals(3, data.size());
+        assertEquals(2, data.dictionarySize(NAME));         // "12"、"apple"
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dateSetterRejectsIntegerColumn() {
+        ColumnarData data = new ColumnarData(head());
+        data.setDate(data.addRow(), AMOUNT, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stringIsNotAcceptedByDoubleColumn() {
+        ColumnarData data = new ColumnarData(head());
+        data.setString(data.addRow(), PRICE, "2.5");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dateIsNotAcceptedByDoubleColumn() {
+        ColumnarData data = new ColumnarData(head());
+        data.setValue(data.addRow(), PRICE, new Date());
+    }
+
+    @Test
+    public void clearKeepsColumnsAndDropsRows() {
+        ColumnarData data = new ColumnarData(head());
+        data.addRow(row("apple", 1, 1.0, null));
+        data.addRow(row("pear", 2, 2.0, null));
+
+        data.clear();
+        assertEquals(0, data.size());
+        assertEquals(0, data.dictionarySize(NAME));
+
+        int row = data.addRow(row("plum", null, null, null));
+        assertEquals(0, row);
+        assertEquals("plum", data.getString(row, NAME));
+        assertTrue(data.isNull(row, AMOUNT));
+    }
+
+    @Test
+    public void sortedOrderIsStableAndPutsNullsFirst() {
+        ColumnarData data = new ColumnarData(head());
+        data.addRow(row("b", 2, null, null));
+        data.addRow(row("a", 10, null, null));
+        data.addRow(row(null, 2, null, null));
+        data.addRow(row("b", null, null, null));
+        data.addRow(row("a", 9, null, null));
+
+        // 数量按值排序, 不是按文本
+        assertArrayEquals(new int[]{3, 0, 2, 4, 1}, data.sortedOrder(new int[]{AMOUNT}));
+        assertArrayEquals(new int[]{2, 4, 1, 3, 0}, data.sortedOrder(new int[]{NAME, AMOUNT}));
+    }
+
+    // 列式数据导出的单元格类型与表头类型一致: 数值列为数字, 日期列为带日期格式的数字
+    @Test
+    public void excelCellsAreTyped() throws Exception {
+        ColumnarData data = new ColumnarData(head());
+        data.addRow(row("apple", 3, 2.5, new Date(millis(2017, 3, 8))));
+        data.addRow(row("007", null, null, null));
+
+        ReportTable table = new ReportTable();
+        table.setHead(head());
+        table.setData(data);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.exportExcel(out);
+
+        HSSFWorkbook workbook = new HSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+        Sheet sheet = workbook.getSheetAt(0);
+        Row first = sheet.getRow(sheet.getLastRowNum() - 1);
+        Row second = sheet.getRow(sheet.getLastRowNum());
+
+        assertEquals(Cell.CELL_TYPE_STRING, first.getCell(NAME).getCellType());
+        assertEquals("apple", first.getCell(NAME).getStringCellValue());
+
+        assertEquals(Cell.CELL_TYPE_NUMERIC, first.getCell(AMOUNT).getCellType());
+        assertEquals(3.0, first.getCell(AMOUNT).getNumericCellValue(), 0);
+
+        assertEquals(Cell.CELL_TYPE_NUMERIC, first.getCell(PRICE).getCellType());
+        assertEquals(2.5, first.getCell(PRICE).getNumericCellValue(), 0);
+
+        Cell day = first.getCell(DAY);
+        assertEquals(Cell.CELL_TYPE_NUMERIC, day.getCellType());
+        assertTrue(DateUtil.isCellDateFormatted(day));
+        assertEquals(new Date(millis(2017, 3, 8)), day.getDateCellValue());
+
+        // 数字样式的字符串仍写为文本, 空值不写单元格
+        assertEquals(Cell.CELL_TYPE_STRING, second.getCell(NAME).getCellType());
+        assertEquals("007", second.getCell(NAME).getStringCellValue());
+        Cell amount = second.getCell(AMOUNT);
+        assertTrue(amount == null || amount.getCellType() == Cell.CELL_TYPE_BLANK);
+    }
+}
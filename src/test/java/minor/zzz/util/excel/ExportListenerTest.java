@@ -0,0 +1,129 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.Data;
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExportListenerTest {
+
+    // 按顺序记录回调
+    private static final class RecordingListener implements ExportListener {
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        private volatile ExportStatistics statistics;
+
+        @Override
+        public void exportStarted(String format) {
+            events.add("START " + format);
+        }
+
+        @Override
+        public void phaseCompleted(ExportPhase phase, long nanos) {
+            events.add(phase.name());
+        }
+
+        @Override
+        public void exportCompleted(ExportStatistics statistics) {
+            events.add("COMPLETED");
+            this.statistics = statistics;
+        }
+
+        @Override
+        public void exportFailed(Throwable error) {
+            events.add("FAILED");
+        }
+    }
+
+    private static List<Data> rows(int n) {
+        List<Data> rows = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Data row = new Data();
+            row.put("key", (i * 7919) % 101);
+            row.put("seq", i);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static ReportTable table(RecordingListener listener) {
+        ReportTable table = new ReportTable();
+        table.setExportListener(listener);
+        table.setHead(new ArrayList<>(Arrays.asList(new Head("key", "key", DataType.INTEGER), new Head("seq", "seq", DataType.INTEGER))));
+        return table;
+    }
+
+    // 设置数据、分组列时不排序也不回调, 排序作为导出的SORT阶段在START之后报告
+    @Test
+    public void sortIsReportedInsideTheExport() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        ReportTable table = table(listener);
+        table.setData(rows(20000));
+        table.setGroupField(new ArrayList<>(Collections.singletonList("key")));
+        assertTrue(listener.events.toString(), listener.events.isEmpty());
+
+        table.exportCsv(new ByteArrayOutputStream());
+
+        assertEquals(Arrays.asList("START CSV", "HEAD", "SORT", "BODY", "COMPLETED"), listener.events);
+        assertTrue(listener.statistics.getPhaseNanos(ExportPhase.SORT) > 0);
+        assertEquals(20000, listener.statistics.getRows());
+    }
+
+    @Test
+    public void columnarSortIsReportedInsideTheExport() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        ReportTable table = table(listener);
+        table.setGroupField(new ArrayList<>(Collections.singletonList("key")));
+
+        ColumnarData data = new ColumnarData(table.getHead());
+        for (Data row : rows(1000)) {
+            data.addRow(row);
+        }
+        table.setData(data);
+        assertTrue(listener.events.toString(), listener.events.isEmpty());
+
+        table.exportExcel(new ByteArrayOutputStream());
+
+        assertEquals("START XLS", listener.events.get(0));
+        assertTrue(listener.events.toString(), listener.events.contains("SORT"));
+        assertEquals("COMPLETED", listener.events.get(listener.events.size() - 1));
+    }
+
+    // 设置监听器时统计合并单元格的数量和耗时, 默认的NONE不统计
+    @Test
+    public void mergeTimingIsReportedOnlyToListeners() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        ReportTable table = table(listener);
+        table.setData(rows(5000));
+        table.setGroupField(new ArrayList<>(Collections.singletonList("key")));
+
+        table.exportExcel(new ByteArrayOutputStream());
+
+        assertTrue(listener.events.toString(), listener.events.contains("MERGE"));
+        assertEquals(101, listener.statistics.getMergedRegions());
+        assertTrue(listener.statistics.getPhaseNanos(ExportPhase.MERGE) > 0);
+
+        assertTrue(new ExportRecorder(listener, "XLS").enabled());
+        assertTrue(!new ExportRecorder(ExportListener.NONE, "XLS").enabled());
+    }
+
+    @Test
+    public void sortedDataIsVisibleThroughGetData() {
+        ReportTable table = table(new RecordingListener());
+        table.setData(rows(100));
+        table.setGroupField(new ArrayList<>(Collections.singletonList("key")));
+
+        List<Data> data = table.getData();
+        for (int i = 1; i < data.size(); i++) {
+            assertTrue((Integer) data.get(i - 1).get("key") <= (Integer) data.get(i).get("key"));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.Data;
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 外部排序的结果与内存排序一致, 临时文件全部删除
+ */
+public class ExternalSorterTest {
+
+    private static List<Data> rows(int n) {
+        List<Data> rows = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Data row = new Data();
+            row.put("key", "k" + (i * 7919) % 37);
+            row.put("name", "name-" + i);
+            row.put("seq", i);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static ReportTable table() {
+        ReportTable table = new ReportTable();
+        table.setHead(new ArrayList<>(Arrays.asList(new Head("key", "key", DataType.STRING),
+                new Head("name", "name", DataType.STRING), new Head("seq", "seq", DataType.INTEGER))));
+        table.setGroupField(new ArrayList<>(Collections.singletonList("key")));
+        return table;
+    }
+
+    private static String csv(ReportTable table) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.exportCsv(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static int files(Path directory) throws Exception {
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path ignored : files) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // 预算很小时产生数百个有序段, 每次只归并两段, 多轮归并后结果不变; 不同的字符串超出段内字典的上限
+    @Test
+    public void multiPassMergeMatchesInMemorySort() throws Exception {
+        ReportTable sorted = table();
+        sorted.setData(rows(10000));
+        String expected = csv(sorted);
+
+        Path directory = Files.createTempDirectory("report-sort-test");
+        try {
+            ReportTable table = table();
+            table.setSortMemoryBudget(2000);
+            table.setSortTempDirectory(directory);
+            table.setUnsortedDataSource(new ArrayList<Map<String, Object>>(rows(10000)).iterator());
+
+            assertEquals(expected, csv(table));
+            assertEquals(0, files(directory));
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void fewRunsAreMergedInOnePass() throws Exception {
+        ReportTable sorted = table();
+        sorted.setData(rows(3000));
+        String expected = csv(sorted);
+
+        ReportTable table = table();
+        table.setSortMemoryBudget(256 * 1024);
+        table.setUnsortedDataSource(new ArrayList<Map<String, Object>>(rows(3000)).iterator());
+
+        assertEquals(expected, csv(table));
+    }
+}
@@ -0,0 +1,228 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.Data;
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * STRING分组列在各种数据(Data、列式、堆外、未排序数据源)下排序结果一致
+ */
+public class GroupOrderTest {
+
+    private static final Object[] KEYS = {"10", "9", "2", "b", "100", "10.5", null, "a", "-3", "9", "02", "2"};
+
+    private static List<Head> head() {
+        return new ArrayList<>(Arrays.asList(new Head("key", "key", DataType.STRING), new Head("seq", "seq", DataType.INTEGER)));
+    }
+
+    private static List<Data> rows() {
+        List<Data> rows = new ArrayList<>();
+        for (int i = 0; i < KEYS.length; i++) {
+            Data row = new Data();
+            row.put("key", KEYS[i]);
+            row.put("seq", i);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static ReportTable table() {
+        ReportTable table = new ReportTable();
+        table.setHead(head());
+        table.setGroupField(new ArrayList<>(Collections.singletonList("key")));
+        return table;
+    }
+
+    private static String csv(ReportTable table) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.exportCsv(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static List<Map<String, Object>> maps() {
+        return new ArrayList<Map<String, Object>>(rows());
+    }
+
+    private static String keys(String csv) {
+        StringBuilder keys = new StringBuilder();
+        for (String line : csv.split("\r\n")) {
+            keys.append(line, 0, line.indexOf(',')).append(' ');
+        }
+        return keys.toString().trim();
+    }
+
+    @Test
+    public void inMemoryAndExternalSortsAgree() throws Exception {
+        ReportTable listTable = table();
+        listTable.setData(rows());
+        String expected = csv(listTable);
+
+        // 字符串按String.compareTo排序, 空值在前
+        assertEquals("key  -3 02 10 10.5 100 2 2 9 9 a b", keys(expected));
+
+        ReportTable unsorted = table();
+        unsorted.setUnsortedDataSource(maps().iterator());
+        assertEquals(expected, csv(unsorted));
+
+        // 每块只放得下少量行, 排序结果写入多个临时文件后归并
+        ReportTable spilled = table();
+        spilled.setSortMemoryBudget(64);
+        spilled.setUnsortedDataSource(maps().iterator());
+        assertEquals(expected, csv(spilled));
+
+        ColumnarData columnar = new ColumnarData(head());
+        for (Data row : rows()) {
+            columnar.addRow(row);
+        }
+        ReportTable columnarTable = table();
+        columnarTable.setData(columnar);
+        assertEquals(expected, csv(columnarTable));
+
+        try (OffHeapRowData offHeap = new OffHeapRowData(head())) {
+            for (Data row : rows()) {
+                offHeap.addRow(row);
+            }
+            ReportTable offHeapTable = table();
+            offHeapTable.setData(offHeap);
+            assertEquals(expected, csv(offHeapTable));
+        }
+    }
+
+    // 导出后追加、清空行, 下一次导出重新排序
+    @Test
+    public void rowsAddedAfterExportAreSorted() throws Exception {
+        ColumnarData columnar = new ColumnarData(head());
+        try (OffHeapRowData offHeap = new OffHeapRowData(head())) {
+            for (RowStore store : Arrays.<RowStore>asList(columnar, offHeap)) {
+                ReportTable storeTable = table();
+                List<Data> rows = rows();
+                for (Data row : rows.subList(0, 4)) {
+                    add(store, row);
+                }
+                if (store instanceof ColumnarData) {
+                    storeTable.setData((ColumnarData) store);
+                } else {
+                    storeTable.setData((OffHeapRowData) store);
+                }
+                assertEquals("key 10 2 9 b", keys(csv(storeTable)));
+
+                for (Data row : rows.subList(4, rows.size())) {
+                    add(store, row);
+                }
+                assertEquals("key  -3 02 10 10.5 100 2 2 9 9 a b", keys(csv(storeTable)));
+
+                clear(store);
+                for (Data row : values("z", "y")) {
+                    add(store, row);
+                }
+                assertEquals("key y z", keys(csv(storeTable)));
+            }
+        }
+    }
+
+    private static void add(RowStore store, Data row) {
+        if (store instanceof ColumnarData) {
+            ((ColumnarData) store).addRow(row);
+        } else {
+            ((OffHeapRowData) store).addRow(row);
+        }
+    }
+
+    private static void clear(RowStore store) {
+        if (store instanceof ColumnarData) {
+            ((ColumnarData) store).clear();
+        } else {
+            ((OffHeapRowData) store).clear();
+        }
+    }
+
+    private static List<Data> values(Object... keys) {
+        List<Data> rows = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            Data row = new Data();
+            row.put("key", keys[i]);
+            row.put("seq", i);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // STRING列中的非字符串值按自身的值排序, 而不是写出的文本
+    @Test
+    public void nonStringValuesInStringColumnSortByValue() throws Exception {
+        ReportTable numbers = table();
+        numbers.setData(values(10, 9, 2, null));
+        assertEquals("key  2 9 10", keys(csv(numbers)));
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        List<Object> dates = new ArrayList<>();
+        for (int day : new int[]{5, 1, 3, 2, 4}) {
+            calendar.set(2015, Calendar.JANUARY, day);
+            dates.add(calendar.getTime());
+        }
+
+        ReportTable dateTable = table();
+        dateTable.setData(values(dates.toArray()));
+        List<Data> sorted = dateTable.getData();
+        for (int i = 1; i < sorted.size(); i++) {
+            assertTrue(((Date) sorted.get(i - 1).get("key")).before((Date) sorted.get(i).get("key")));
+        }
+    }
+
+    private static List<Map<String, Object>> keyed(Object... keys) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            Data row = new Data();
+            row.put("key", keys[i]);
+            row.put("seq", i);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // 数据库对字符串列ORDER BY后的顺序, 校验通过
+    @Test
+    public void verifyOrderAcceptsStringOrder() throws Exception {
+        ReportTable csvTable = table();
+        csvTable.setDataSource(keyed(null, "10", "10", "2", "9", "a").iterator(), true);
+        assertEquals("key  10 10 2 9 a", keys(csv(csvTable)));
+
+        ReportTable excelTable = table();
+        excelTable.setDataSource(keyed(null, "10", "10", "2", "9", "a").iterator(), true);
+        excelTable.exportExcel(new ByteArrayOutputStream());
+
+        ReportTable htmlTable = table();
+        htmlTable.setDataSource(keyed(null, "10", "10", "2", "9", "a").iterator(), true);
+        htmlTable.exportHtml(new ByteArrayOutputStream());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void csvVerifiesOrder() throws Exception {
+        ReportTable table = table();
+        table.setDataSource(keyed("2", "9", "10").iterator(), true);
+        csv(table);
+    }
+
+    @Test
+    public void csvWithoutVerificationWritesSourceOrder() throws Exception {
+        ReportTable table = table();
+        table.setDataSource(keyed(2, 10, 9).iterator());
+        assertEquals("key,seq\r\n2,0\r\n10,1\r\n9,2\r\n", csv(table));
+    }
+}
@@ -0,0 +1,120 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.HeaderLayout.HeadCell;
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class HeaderLayoutTest {
+
+    // 地区 | 商品(名称, 价格(单价, 折扣)) | 数量
+    private static List<Head> head() {
+        Head price = new Head("price", "价格", new ArrayList<>(Arrays.asList(
+                new Head("unitPrice", "单价", DataType.DOUBLE), new Head("discount", "折扣", DataType.DOUBLE, "0.00%"))));
+        Head goods = new Head("goods", "商品", new ArrayList<>(Arrays.asList(
+                new Head("name", "名称", DataType.STRING), price)));
+
+        return new ArrayList<>(Arrays.asList(new Head("region", "地区"), goods, new Head("amount", "数量", DataType.INTEGER)));
+    }
+
+    // 名称@行,列 跨行x跨列
+    private static String cells(HeaderLayout layout) {
+        StringBuilder cells = new StringBuilder();
+        for (HeadCell h : layout.getCells()) {
+            cells.append(h.getName()).append('@').append(h.getRow()).append(',').append(h.getColumn())
+                    .append(' ').append(h.getRowSpan()).append('x').append(h.getColumnSpan()).append('\n');
+        }
+        return cells.toString();
+    }
+
+    @Test
+    public void compilesDepthSpansAndLeafColumns() {
+        HeaderLayout layout = HeaderLayout.compile(head());
+
+        assertEquals(3, layout.getDepth());
+        assertEquals(5, layout.getWidth());
+
+        // 按行、列排序; 叶子表头跨到最后一行, 父表头跨所有叶子列
+        assertEquals("地区@0,0 3x1\n"
+                + "商品@0,1 1x3\n"
+                + "数量@0,4 3x1\n"
+                + "名称@1,1 2x1\n"
+                + "价格@1,2 1x2\n"
+                + "单价@2,2 1x1\n"
+                + "折扣@2,3 1x1\n", cells(layout));
+
+        assertEquals(Arrays.asList("region", "name", "unitPrice", "discount", "amount"), Arrays.asList(
+                layout.getField(0), layout.getField(1), layout.getField(2), layout.getField(3), layout.getField(4)));
+        assertEquals(DataType.DOUBLE, layout.getDataType(layout.columnOf("discount")));
+        assertEquals("0.00%", layout.getFormat(3));
+        assertEquals(-1, layout.columnOf("price"));
+        assertEquals(-1, layout.columnOf("missing"));
+    }
+
+    @Test
+    public void emptyHead() {
+        HeaderLayout layout = HeaderLayout.compile(null);
+
+        assertEquals(0, layout.getDepth());
+        assertEquals(0, layout.getWidth());
+        assertEquals(0, layout.getCells().size());
+    }
+
+    @Test
+    public void changingTheHeadAfterCompileDoesNotChangeTheLayout() {
+        List<Head> head = head();
+        HeaderLayout layout = HeaderLayout.compile(head);
+
+        head.get(2).setDataType(DataType.DOUBLE);
+        head.add(new Head("memo", "备注"));
+
+        assertEquals(5, layout.getWidth());
+        assertEquals(DataType.INTEGER, layout.getDataType(4));
+    }
+
+    @Test
+    public void tableRecompilesOnlyAfterSetHead() {
+        List<Head> head = head();
+        ReportTable table = new ReportTable();
+        table.setHead(head);
+
+        HeaderLayout layout = table.getHeaderLayout();
+        assertSame(layout, table.getHeaderLayout());
+
+        // 修改表头后不重新setHead时仍使用已编译的布局
+        head.get(1).addChild(new Head("memo", "备注"));
+        assertSame(layout, table.getHeaderLayout());
+        assertEquals(5, table.getHeaderLayout().getWidth());
+
+        table.setHead(head);
+        HeaderLayout changed = table.getHeaderLayout();
+        assertNotSame(layout, changed);
+        assertEquals(6, changed.getWidth());
+        assertEquals(4, changed.columnOf("memo"));
+        assertEquals("商品@0,1 1x4\n", cells(changed).split("(?<=\n)")[1]);
+    }
+
+    @Test
+    public void sharedLayoutIsUsedWithoutRecompiling() {
+        HeaderLayout layout = HeaderLayout.compile(head());
+
+        ReportTable table = new ReportTable();
+        table.setHeaderLayout(layout);
+
+        assertSame(layout, table.getHeaderLayout());
+        assertEquals(3, table.getHead().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullLayoutIsRejected() {
+        new ReportTable().setHeaderLayout(null);
+    }
+}
@@ -0,0 +1,338 @@
+package minor.zzz.util.excel;
+
+import com.mongodb.MongoClient;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 以进程内的假MongoCollection测试: 只实现find及FindIterable的查询参数, 在内存中执行过滤之外的排序和投影
+ */
+public class MongoDataSourceTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+    private static final String PREFETCH_THREAD = "report-mongo-prefetch";
+
+    // 记录查询参数, 按sort和projection返回文档
+    private static final class FakeCollection {
+        private final List<Document> documents;
+        private final boolean ignoreSort;
+        private final AtomicInteger openCursors = new AtomicInteger();
+        private final AtomicInteger returned = new AtomicInteger();
+
+        private BsonDocument filter;
+        private BsonDocument projection;
+        private BsonDocument sort;
+        private Integer batchSize;
+
+        private FakeCollection(List<Document> documents, boolean ignoreSort) {
+            this.documents = documents;
+            this.ignoreSort = ignoreSort;
+        }
+
+        @SuppressWarnings("unchecked")
+        MongoCollection<Document> collection() {
+            return proxy(MongoCollection.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("find") && args != null && args.length == 1 && args[0] instanceof Bson) {
+                        filter = bson((Bson) args[0]);
+                        return findIterable();
+                    }
+                    return unsupported(proxy, method);
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private FindIterable<Document> findIterable() {
+            return proxy(FindIterable.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    switch (method.getName()) {
+                        case "projection":
+                            projection = bson((Bson) args[0]);
+                            return proxy;
+                        case "sort":
+                            sort = bson((Bson) args[0]);
+                            return proxy;
+                        case "batchSize":
+                            batchSize = (Integer) args[0];
+                            return proxy;
+                        case "iterator":
+                            return cursor(query());
+                        default:
+                            return unsupported(proxy, method);
+                    }
+                }
+            });
+        }
+
+        private List<Document> query() {
+            List<Document> result = new ArrayList<>();
+            for (Document document : documents) {
+                Document projected = new Document();
+                for (Map.Entry<String, Object> entry : document.entrySet()) {
+                    if (projection == null || included(entry.getKey())) {
+                        projected.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                result.add(projected);
+            }
+
+            if (sort != null && !ignoreSort) {
+                Collections.sort(result, new Comparator<Document>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public int compare(Document d1, Document d2) {
+                        for (String field : sort.keySet()) {
+                            Comparable<Object> v1 = (Comparable<Object>) d1.get(field);
+                            Object v2 = d2.get(field);
+                            int c = v1 == null ? (v2 == null ? 0 : -1) : (v2 == null ? 1 : v1.compareTo(v2));
+                            if (c != 0) {
+                                return sort.getNumber(field).intValue() < 0 ? -c : c;
+                            }
+                        }
+                        return 0;
+                    }
+                });
+            }
+
+            return result;
+        }
+
+        private boolean included(String field) {
+            BsonValue value = projection.get(field);
+            if ("_id".equals(field)) {
+                return value == null || value.asNumber().intValue() != 0;
+            }
+            return value != null && value.asNumber().intValue() != 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private MongoCursor<Document> cursor(final List<Document> result) {
+            openCursors.incrementAndGet();
+            final Iterator<Document> iterator = result.iterator();
+            return proxy(MongoCursor.class, new InvocationHandler() {
+                private boolean closed = false;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    switch (method.getName()) {
+                        case "hasNext":
+                            return !closed && iterator.hasNext();
+                        case "next":
+                            if (closed) {
+                                throw new IllegalStateException("cursor is closed");
+                            }
+                            returned.incrementAndGet();
+                            return iterator.next();
+                        case "close":
+                            if (!closed) {
+                                closed = true;
+                                openCursors.decrementAndGet();
+                            }
+                            return null;
+                        default:
+                            return unsupported(proxy, method);
+                    }
+                }
+            });
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(MongoDataSourceTest.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object unsupported(Object proxy, Method method) {
+        switch (method.getName()) {
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return false;
+            case "toString":
+                return "fake " + method.getDeclaringClass().getSimpleName();
+            default:
+                throw new UnsupportedOperationException(method.toString());
+        }
+    }
+
+    private static BsonDocument bson(Bson bson) {
+        return bson.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry());
+    }
+
+    // key为乱序的整数, 每个文档另有不导出的字段
+    private static List<Document> documents(int n) {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            documents.add(new Document("_id", i)
+                    .append("key", (i * 7919) % 97)
+                    .append("name", "n" + i)
+                    .append("secret", "s" + i));
+        }
+        return documents;
+    }
+
+    private static ReportTable table() {
+        ReportTable table = new ReportTable();
+        table.setHead(new ArrayList<>(Arrays.asList(new Head("key", "key", DataType.INTEGER), new Head("name", "name", DataType.STRING))));
+        table.setGroupField(new ArrayList<>(Collections.singletonList("key")));
+        return table;
+    }
+
+    private static String csv(ReportTable table) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.exportCsv(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static List<Thread> prefetchThreads() {
+        List<Thread> threads = new ArrayList<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (PREFETCH_THREAD.equals(thread.getName())) {
+                threads.add(thread);
+            }
+        }
+        return threads;
+    }
+
+    private static void assertPrefetchThreadsStop() throws InterruptedException {
+        for (Thread thread : prefetchThreads()) {
+            thread.join(TIMEOUT_MILLIS);
+            assertFalse("prefetch thread still running", thread.isAlive());
+        }
+    }
+
+    @After
+    public void noPrefetchThreadLeft() throws InterruptedException {
+        assertPrefetchThreadsStop();
+    }
+
+    @Test
+    public void buildsQueryFromHeadAndGroupFields() throws Exception {
+        FakeCollection fake = new FakeCollection(documents(10), false);
+        MongoDataSource source = new MongoDataSource(fake.collection());
+        source.setFilter(Filters.gte("key", 3));
+        source.setBatchSize(4);
+
+        ReportTable table = table();
+        source.bind(table);
+
+        // 导出开始前不读取游标
+        assertEquals(0, fake.returned.get());
+        csv(table);
+
+        assertEquals(bson(Filters.gte("key", 3)), fake.filter);
+        assertEquals(BsonDocument.parse("{key: 1, name: 1, _id: 0}"), fake.projection);
+        assertEquals(BsonDocument.parse("{key: 1}"), fake.sort);
+        assertEquals(Integer.valueOf(4), fake.batchSize);
+    }
+
+    @Test
+    public void exportsInServerOrderWithProjectedFields() throws Exception {
+        for (int prefetch : new int[]{0, 2}) {
+            FakeCollection fake = new FakeCollection(documents(1000), false);
+            MongoDataSource source = new MongoDataSource(fake.collection());
+            source.setBatchSize(16);
+            source.setPrefetchBatches(prefetch);
+            source.setVerifyOrder(true);
+
+            ReportTable table = table();
+            source.bind(table);
+            String text = csv(table);
+
+            String[] lines = text.split("\r\n");
+            assertEquals(1001, lines.length);
+            assertEquals("key,name", lines[0]);
+            int previous = -1;
+            for (int i = 1; i < lines.length; i++) {
+                int key = Integer.parseInt(lines[i].substring(0, lines[i].indexOf(',')));
+                assertTrue(previous <= key);
+                previous = key;
+            }
+            assertFalse(text.contains("s1"));
+
+            assertEquals(1000, fake.returned.get());
+            assertEquals("prefetch " + prefetch, 0, fake.openCursors.get());
+        }
+        assertPrefetchThreadsStop();
+    }
+
+    // 服务端对字符串字段按字符串顺序排序, 数字形式的字符串不按数值排序, 校验通过
+    @Test
+    public void stringGroupFieldKeepsServerStringOrder() throws Exception {
+        List<Document> documents = new ArrayList<>();
+        String[] keys = {"9", "10", "2", null, "10", "b"};
+        for (int i = 0; i < keys.length; i++) {
+            documents.add(new Document("_id", i).append("key", keys[i]).append("name", "n" + i));
+        }
+
+        FakeCollection fake = new FakeCollection(documents, false);
+        MongoDataSource source = new MongoDataSource(fake.collection());
+        source.setVerifyOrder(true);
+
+        ReportTable table = new ReportTable();
+        table.setHead(new ArrayList<>(Arrays.asList(new Head("key", "key", DataType.STRING), new Head("name", "name", DataType.STRING))));
+        table.setGroupField(new ArrayList<>(Collections.singletonList("key")));
+        source.bind(table);
+
+        assertEquals("key,name\r\n,n3\r\n10,n1\r\n10,n4\r\n2,n2\r\n9,n0\r\nb,n5\r\n", csv(table));
+    }
+
+    // 导出中途失败时关闭数据源, 预读线程放弃剩余批次并关闭游标
+    @Test
+    public void failedExportStopsPrefetchAndClosesCursor() throws Exception {
+        FakeCollection fake = new FakeCollection(documents(10000), true);
+        MongoDataSource source = new MongoDataSource(fake.collection());
+        source.setBatchSize(10);
+        source.setPrefetchBatches(2);
+        source.setVerifyOrder(true);
+
+        ReportTable table = table();
+        source.bind(table);
+        try {
+            csv(table);
+            fail("unsorted documents should fail the order check");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertPrefetchThreadsStop();
+        assertEquals(0, fake.openCursors.get());
+        assertTrue(fake.returned.get() < 10000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveBatchSize() {
+        new MongoDataSource(new FakeCollection(documents(0), false).collection()).setBatchSize(0);
+    }
+}
@@ -0,0 +1,141 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.Data;
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+import minor.zzz.util.threadpool.CountingThreadPoolExecutor;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 多个线程同时导出, 每个工作簿只包含自己表格的数据, 与单线程导出的结果一致
+ */
+public class ReportTableConcurrentExportTest {
+
+    private static final int TABLES = 8;
+    private static final int EXPORTS_PER_TABLE = 4;
+    private static final int ROWS = 200;
+
+    static ReportTable newTable(String prefix, int rows) {
+        Head group = new Head("group", "分组", DataType.STRING);
+        Head name = new Head("name", "名称", DataType.STRING);
+        Head amount = new Head("amount", "数量", DataType.INTEGER);
+
+        ReportTable table = new ReportTable();
+        table.setHead(new ArrayList<>(Arrays.asList(group, name, amount)));
+        table.setGroupField(new ArrayList<>(Arrays.asList("group")));
+
+        List<Data> data = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            Data row = new Data();
+            row.put("group", prefix + "-g" + (i % 7));
+            row.put("name", prefix + "-n" + i);
+            row.put("amount", i);
+            data.add(row);
+        }
+        table.setData(data);
+
+        return table;
+    }
+
+    static byte[] exportExcel(ReportTable table) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.exportExcel(out);
+        return out.toByteArray();
+    }
+
+    // 所有sheet的单元格内容, 每行一条, 用于比较两个工作簿
+    static String dump(byte[] xls) throws IOException {
+        StringBuilder text = new StringBuilder();
+        Workbook workbook = new HSSFWorkbook(new ByteArrayInputStream(xls));
+        for (int s = 0; s < workbook.getNumberOfSheets(); s++) {
+            Sheet sheet = workbook.getSheetAt(s);
+            text.append(sheet.getSheetName()).append('\n');
+            for (Row row : sheet) {
+                text.append(row.getRowNum()).append(':');
+                for (Cell cell : row) {
+                    text.append(cell.getColumnIndex()).append('=').append(cell).append('|');
+                }
+                text.append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void concurrentExportsMatchSequentialExports() throws Exception {
+        final List<ReportTable> tables = new ArrayList<>();
+        final List<String> expected = new ArrayList<>();
+        for (int t = 0; t < TABLES; t++) {
+            ReportTable table = newTable("t" + t, ROWS);
+            tables.add(table);
+            expected.add(dump(exportExcel(table)));
+        }
+
+        final ConcurrentHashMap<String, String> actual = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, Throwable> errors = new ConcurrentHashMap<>();
+
+        CountingThreadPoolExecutor executor = new CountingThreadPoolExecutor(TABLES, TABLES,
+                0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        try {
+            for (int i = 0; i < EXPORTS_PER_TABLE; i++) {
+                for (int t = 0; t < TABLES; t++) {
+                    final int table = t;
+                    final String key = t + "/" + i;
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                actual.put(key, dump(exportExcel(tables.get(table))));
+                            } catch (Throwable e) {
+                                errors.put(key, e);
+                            }
+                        }
+                    });
+                }
+            }
+
+            executor.awaitCompletion(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue("export failed: " + errors, errors.isEmpty());
+        assertEquals(TABLES * EXPORTS_PER_TABLE, actual.size());
+        for (int i = 0; i < EXPORTS_PER_TABLE; i++) {
+            for (int t = 0; t < TABLES; t++) {
+                assertEquals("table " + t + " export " + i, expected.get(t), actual.get(t + "/" + i));
+            }
+        }
+    }
+
+    @Test
+    public void exportsOfDifferentTablesDoNotMix() throws Exception {
+        ReportTable first = newTable("first", ROWS);
+        ReportTable second = newTable("second", ROWS);
+
+        String text = dump(exportExcel(first));
+        exportExcel(second);
+
+        assertTrue(text.contains("first-n0"));
+        assertTrue(!text.contains("second-"));
+        assertEquals(text, dump(exportExcel(first)));
+    }
+}
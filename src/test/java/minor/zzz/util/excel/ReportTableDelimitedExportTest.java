@@ -0,0 +1,144 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.Data;
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReportTableDelimitedExportTest {
+
+    private static Data row(Object name, Object amount, Object price, Object day) {
+        Data row = new Data();
+        row.put("name", name);
+        row.put("amount", amount);
+        row.put("price", price);
+        row.put("day", day);
+        return row;
+    }
+
+    private static ReportTable table(Data... rows) {
+        Head goods = new Head("goods", "商品", new ArrayList<>(Arrays.asList(
+                new Head("name", "名称", DataType.STRING), new Head("amount", "数量", DataType.INTEGER))));
+        Head price = new Head("price", "单价", DataType.DOUBLE);
+        Head day = new Head("day", "日期", DataType.DATE);
+
+        ReportTable table = new ReportTable();
+        table.setHead(new ArrayList<>(Arrays.asList(goods, price, day)));
+        table.setData(new ArrayList<>(Arrays.asList(rows)));
+        return table;
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long millis(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void writesLeafHeadersAndTypedValues() throws Exception {
+        ReportTable table = table(
+                row("apple", 3, 2.5, new Date(millis(2017, 3, 8))),
+                row("pear", -12, 4.0, new Date(millis(1969, 12, 31))));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.exportCsv(out);
+
+        assertEquals("名称,数量,单价,日期\r\n"
+                + "apple,3,2.5,2017-03-08\r\n"
+                + "pear,-12,4,1969-12-31\r\n", text(out.toByteArray()));
+    }
+
+    @Test
+    public void quotesFieldsWithDelimitersQuotesAndNewLines() throws Exception {
+        ReportTable table = table(
+                row("a,b", 1, null, null),
+                row("say \"hi\"", 2, null, null),
+                row("two\nlines", null, null, null));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.exportCsv(out);
+
+        assertEquals("名称,数量,单价,日期\r\n"
+                + "\"a,b\",1,,\r\n"
+                + "\"say \"\"hi\"\"\",2,,\r\n"
+                + "\"two\nlines\",,,\r\n", text(out.toByteArray()));
+    }
+
+    @Test
+    public void tsvQuotesOnlyTabs() throws Exception {
+        ReportTable table = table(row("a,b", 1, null, null), row("a\tb", 2, null, null));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.exportTsv(out);
+
+        assertEquals("名称\t数量\t单价\t日期\r\n"
+                + "a,b\t1\t\t\r\n"
+                + "\"a\tb\"\t2\t\t\r\n", text(out.toByteArray()));
+    }
+
+    @Test
+    public void gzipOutputMatchesPlainOutput() throws Exception {
+        List<Data> rows = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            rows.add(row("name-" + i, i, i / 4.0, null));
+        }
+        ReportTable table = table();
+        table.setData(rows);
+
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        table.exportDelimited(plain, ';', false);
+
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+        table.exportDelimited(zipped, ';', true);
+
+        assertEquals(text(plain.toByteArray()), text(gunzip(zipped.toByteArray())));
+    }
+
+    @Test
+    public void writesLongValuesLargerThanBuffer() throws Exception {
+        String longValue = String.join("", Collections.nCopies(100000, "x"));
+        ReportTable table = table(row(longValue, 1, null, null));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.exportCsv(out);
+
+        assertEquals("名称,数量,单价,日期\r\n" + longValue + ",1,,\r\n", text(out.toByteArray()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsQuoteAsDelimiter() throws Exception {
+        table().exportDelimited(new ByteArrayOutputStream(), '"', false);
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+}
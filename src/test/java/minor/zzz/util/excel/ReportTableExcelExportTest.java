@@ -0,0 +1,228 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.ExcelType;
+import minor.zzz.util.excel.ReportTable.Head;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReportTableExcelExportTest {
+
+    // SXSSF刷写的行以File.createTempFile写到java.io.tmpdir下
+    private static int sxssfTempFiles() {
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles();
+        int count = 0;
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith("poi-sxssf-sheet")) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    // 读出failAfter行后抛出异常的数据源
+    private static Iterator<Map<String, Object>> failingSource(final int failAfter) {
+        return new Iterator<Map<String, Object>>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                if (next == failAfter) {
+                    throw new IllegalStateException("source failed");
+                }
+
+                Map<String, Object> row = new HashMap<>();
+                row.put("name", "n" + next);
+                row.put("amount", next++);
+                return row;
+            }
+        };
+    }
+
+    @Test
+    public void failedXlsxExportDeletesTempFiles() throws Exception {
+        ReportTable table = new ReportTable();
+        table.setHead(new ArrayList<>(Arrays.asList(
+                new Head("name", "名称", DataType.STRING), new Head("amount", "数量", DataType.INTEGER))));
+        table.setExcelType(ExcelType.XLSX);
+        table.setRowAccessWindowSize(10);
+        table.setDataSource(failingSource(1000));
+
+        int before = sxssfTempFiles();
+        try {
+            table.exportExcel(new ByteArrayOutputStream());
+            fail("export should fail with the data source");
+        } catch (IllegalStateException expected) {
+            assertEquals("source failed", expected.getMessage());
+        }
+
+        assertEquals(before, sxssfTempFiles());
+    }
+
+    @Test
+    public void xlsxExportDeletesTempFiles() throws Exception {
+        ReportTable table = ReportTableConcurrentExportTest.newTable("x", 500);
+        table.setExcelType(ExcelType.XLSX);
+        table.setRowAccessWindowSize(10);
+
+        int before = sxssfTempFiles();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.exportExcel(out);
+
+        assertTrue(out.size() > 0);
+        assertEquals(before, sxssfTempFiles());
+    }
+
+    @Test
+    public void sheetsAreGeneratedSequentiallyByDefault() {
+        assertEquals(1, new ReportTable().getSheetParallelism());
+    }
+
+    // 工作线程写入字符串的同时导出线程创建sheet和表头, 共享字符串表不能错乱
+    @Test
+    public void parallelSheetsMatchSequentialSheets() throws Exception {
+        ReportTable table = ReportTableConcurrentExportTest.newTable("p", 3000);
+        table.setSheetRowLimit(100);
+        String expected = ReportTableConcurrentExportTest.dump(ReportTableConcurrentExportTest.exportExcel(table));
+        assertTrue(expected.contains("excel-20"));
+
+        table.setSheetParallelism(4);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(expected, ReportTableConcurrentExportTest.dump(ReportTableConcurrentExportTest.exportExcel(table)));
+        }
+
+        // 缓存行数不足两个sheet时逐个写入
+        table.setSheetBufferRows(150);
+        assertEquals(expected, ReportTableConcurrentExportTest.dump(ReportTableConcurrentExportTest.exportExcel(table)));
+    }
+
+    // 按分组顺序生成的数据源, 每组groupRows行
+    private static Iterator<Map<String, Object>> groupedSource(final int groups, final int groupRows) {
+        return new Iterator<Map<String, Object>>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < groups * groupRows;
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                Map<String, Object> row = new HashMap<>();
+                row.put("group", "g" + (next / groupRows));
+                row.put("name", "n" + next);
+                row.put("amount", next++);
+                return row;
+            }
+        };
+    }
+
+    private static ReportTable groupedTable(int groups, int groupRows) {
+        ReportTable table = new ReportTable();
+        table.setHead(new ArrayList<>(Arrays.asList(new Head("group", "分组", DataType.STRING),
+                new Head("name", "名称", DataType.STRING), new Head("amount", "数量", DataType.INTEGER))));
+        table.setGroupField(new ArrayList<>(Collections.singletonList("group")));
+        table.setDataSource(groupedSource(groups, groupRows));
+        return table;
+    }
+
+    private static long peakBufferedRows(ReportTable table) throws Exception {
+        final AtomicLong peak = new AtomicLong(-1);
+        table.setExportListener(new ExportListener() {
+            @Override
+            public void exportCompleted(ExportStatistics statistics) {
+                peak.set(statistics.getPeakBufferedRows());
+            }
+        });
+        table.exportExcel(new ByteArrayOutputStream());
+        return peak.get();
+    }
+
+    // 未设置sheet行数上限时不缓存分组, 设置时最多缓存一个sheet
+    @Test
+    public void largeGroupIsStreamed() throws Exception {
+        ReportTable unlimited = groupedTable(1, 30000);
+        unlimited.setExcelType(ExcelType.XLSX);
+        assertEquals(0, peakBufferedRows(unlimited));
+
+        ReportTable limited = groupedTable(1, 30000);
+        limited.setExcelType(ExcelType.XLSX);
+        limited.setSheetRowLimit(1000);
+        long peak = peakBufferedRows(limited);
+        assertTrue(String.valueOf(peak), peak <= 1000);
+    }
+
+    // 放得下剩余行数的分组不跨sheet, 超出一个sheet的分组从新sheet开始连续写入
+    @Test
+    public void groupsThatFitStayOnOneSheet() throws Exception {
+        ReportTable table = groupedTable(5, 300);
+        table.setSheetRowLimit(1000);
+        assertEquals(Arrays.asList(900, 600), dataRowsPerSheet(ReportTableConcurrentExportTest.exportExcel(table)));
+
+        // 第一个分组后剩余700行, 放不下第二个分组; 第二个分组从新sheet开始, 写满后接着写下一个sheet
+        table = new ReportTable();
+        table.setHead(groupedTable(0, 0).getHead());
+        table.setGroupField(new ArrayList<>(Collections.singletonList("group")));
+        List<Map<String, Object>> rows = new ArrayList<>();
+        Iterator<Map<String, Object>> small = groupedSource(1, 300);
+        while (small.hasNext()) {
+            rows.add(small.next());
+        }
+        Iterator<Map<String, Object>> large = groupedSource(1, 1500);
+        while (large.hasNext()) {
+            Map<String, Object> row = large.next();
+            row.put("group", "h");
+            rows.add(row);
+        }
+        table.setDataSource(rows.iterator());
+        table.setSheetRowLimit(1000);
+        assertEquals(Arrays.asList(300, 1000, 500), dataRowsPerSheet(ReportTableConcurrentExportTest.exportExcel(table)));
+    }
+
+    private static List<Integer> dataRowsPerSheet(byte[] xls) throws Exception {
+        List<Integer> counts = new ArrayList<>();
+        Workbook workbook = new HSSFWorkbook(new ByteArrayInputStream(xls));
+        for (int s = 0; s < workbook.getNumberOfSheets(); s++) {
+            int count = 0;
+            for (Row row : workbook.getSheetAt(s)) {
+                Cell name = row.getCell(1);
+                if (name != null && name.getStringCellValue().startsWith("n")) {
+                    count++;
+                }
+            }
+            counts.add(count);
+        }
+        return counts;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveSheetBufferRows() {
+        new ReportTable().setSheetBufferRows(0);
+    }
+}
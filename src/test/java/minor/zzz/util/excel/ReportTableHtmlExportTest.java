@@ -0,0 +1,93 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.Data;
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReportTableHtmlExportTest {
+
+    private static Data row(Object region, Object city, Object name, Object amount) {
+        Data row = new Data();
+        row.put("region", region);
+        row.put("city", city);
+        row.put("name", name);
+        row.put("amount", amount);
+        return row;
+    }
+
+    // 地区 | 城市 | 商品(名称, 数量): 商品跨两列, 地区、城市跨两行
+    private static ReportTable table(List<String> groupField, Data... rows) {
+        Head goods = new Head("goods", "商品", new ArrayList<>(Arrays.asList(
+                new Head("name", "名称", DataType.STRING), new Head("amount", "数量", DataType.INTEGER))));
+
+        ReportTable table = new ReportTable();
+        table.setHead(new ArrayList<>(Arrays.asList(
+                new Head("region", "地区", DataType.STRING), new Head("city", "城市", DataType.STRING), goods)));
+        table.setGroupField(new ArrayList<>(groupField));
+        table.setData(new ArrayList<>(Arrays.asList(rows)));
+        return table;
+    }
+
+    private static String html(ReportTable table) throws Exception {
+        StringWriter out = new StringWriter();
+        table.exportHtml(out);
+        return out.toString();
+    }
+
+    private static final String HEAD = "<table>\n<thead>\n"
+            + "<tr><th rowspan=\"2\">地区</th><th rowspan=\"2\">城市</th><th colspan=\"2\">商品</th></tr>\n"
+            + "<tr><th>名称</th><th>数量</th></tr>\n"
+            + "</thead>\n";
+
+    @Test
+    public void multiLevelHeadersSpanRowsAndColumns() throws Exception {
+        ReportTable table = table(new ArrayList<String>(),
+                row("north", "a&b", "<apple>", 3),
+                row(null, null, null, null));
+
+        assertEquals(HEAD + "<tbody>\n"
+                + "<tr><td>north</td><td>a&amp;b</td><td>&lt;apple&gt;</td><td>3</td></tr>\n"
+                + "<tr><td></td><td></td><td></td><td></td></tr>\n"
+                + "</tbody>\n</table>\n", html(table));
+    }
+
+    @Test
+    public void groupedColumnsSpanTheRowsOfEachGroup() throws Exception {
+        ReportTable table = table(Arrays.asList("region", "city"),
+                row("south", "x", "pear", 1),
+                row("north", "b", "apple", 2),
+                row("north", "a", "plum", 3),
+                row("north", "b", "fig", 4),
+                row("south", "x", "kiwi", 5));
+
+        // 分组外层跨整个地区, 内层在地区内按城市跨行; 组内保持添加顺序
+        assertEquals(HEAD + "<tbody>\n"
+                + "<tr><td rowspan=\"3\">north</td><td>a</td><td>plum</td><td>3</td></tr>\n"
+                + "<tr><td rowspan=\"2\">b</td><td>apple</td><td>2</td></tr>\n"
+                + "<tr><td>fig</td><td>4</td></tr>\n"
+                + "<tr><td rowspan=\"2\">south</td><td rowspan=\"2\">x</td><td>pear</td><td>1</td></tr>\n"
+                + "<tr><td>kiwi</td><td>5</td></tr>\n"
+                + "</tbody>\n</table>\n", html(table));
+    }
+
+    @Test
+    public void innerGroupRestartsWhenOuterGroupChanges() throws Exception {
+        // 城市相同但地区不同, 不能跨地区合并
+        ReportTable table = table(Arrays.asList("region", "city"),
+                row("north", "x", "apple", 1),
+                row("south", "x", "pear", 2));
+
+        assertEquals(HEAD + "<tbody>\n"
+                + "<tr><td>north</td><td>x</td><td>apple</td><td>1</td></tr>\n"
+                + "<tr><td>south</td><td>x</td><td>pear</td><td>2</td></tr>\n"
+                + "</tbody>\n</table>\n", html(table));
+    }
+}
@@ -0,0 +1,106 @@
+package minor.zzz.util.excel;
+
+import minor.zzz.util.excel.ReportTable.Aggregation;
+import minor.zzz.util.excel.ReportTable.Data;
+import minor.zzz.util.excel.ReportTable.DataType;
+import minor.zzz.util.excel.ReportTable.Head;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 小计、合计行的位置和聚合结果
+ */
+public class ReportTableTotalsTest {
+
+    private static Head head(String field, DataType dataType, Aggregation aggregation) {
+        Head head = new Head(field, field, dataType);
+        head.setAggregation(aggregation);
+        return head;
+    }
+
+    private static List<Data> rows() {
+        List<Data> rows = new ArrayList<>();
+        Object[][] values = {{"a", 1, 2.5}, {"a", 2, 4.0}, {"b", 3, 1.5}};
+        for (Object[] value : values) {
+            Data row = new Data();
+            row.put("group", value[0]);
+            row.put("amount", value[1]);
+            row.put("price", value[2]);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static ReportTable table(Head... head) {
+        ReportTable table = new ReportTable();
+        table.setHead(new ArrayList<>(Arrays.asList(head)));
+        table.setGroupField(new ArrayList<>(Collections.singletonList("group")));
+        table.setData(rows());
+        return table;
+    }
+
+    // 表头之后的各行
+    private static String body(ReportTable table) throws Exception {
+        String dump = ReportTableConcurrentExportTest.dump(ReportTableConcurrentExportTest.exportExcel(table));
+        return dump.substring(dump.indexOf('\n', dump.indexOf("=amount|")) + 1);
+    }
+
+    @Test
+    public void subtotalsFollowEachGroupAndGrandTotalEndsTheBody() throws Exception {
+        ReportTable table = table(head("group", DataType.STRING, null), head("amount", DataType.INTEGER, Aggregation.SUM),
+                head("price", DataType.DOUBLE, Aggregation.MAX));
+
+        assertEquals("5:0=a|1=1.0|2=2.5|\n"
+                + "6:0=a|1=2.0|2=4.0|\n"
+                + "7:0=小计|1=3.0|2=4.0|\n"
+                + "8:0=b|1=3.0|2=1.5|\n"
+                + "9:0=小计|1=3.0|2=1.5|\n"
+                + "10:0=合计|1=6.0|2=4.0|\n", body(table));
+    }
+
+    // 第一列有聚合时合计标签写在第一个没有聚合的列, 不覆盖合计值
+    @Test
+    public void grandTotalKeepsAggregateOfFirstColumn() throws Exception {
+        ReportTable table = table(head("amount", DataType.INTEGER, Aggregation.SUM), head("group", DataType.STRING, null),
+                head("price", DataType.DOUBLE, Aggregation.MAX));
+
+        assertEquals("5:0=1.0|1=a|2=2.5|\n"
+                + "6:0=2.0|1=a|2=4.0|\n"
+                + "7:0=3.0|1=小计|2=4.0|\n"
+                + "8:0=3.0|1=b|2=1.5|\n"
+                + "9:0=3.0|1=小计|2=1.5|\n"
+                + "10:0=6.0|1=合计|2=4.0|\n", body(table));
+    }
+
+    // 所有列都有聚合时不写标签
+    @Test
+    public void labelsNeverReplaceAggregates() throws Exception {
+        ReportTable table = table(head("group", DataType.STRING, Aggregation.COUNT), head("amount", DataType.INTEGER, Aggregation.SUM));
+        table.getFooter().setSubtotal(false);
+
+        assertEquals("5:0=a|1=1.0|\n"
+                + "6:0=a|1=2.0|\n"
+                + "7:0=b|1=3.0|\n"
+                + "8:0=3.0|1=6.0|\n", body(table));
+    }
+
+    @Test
+    public void footerSwitchesOffTotals() throws Exception {
+        ReportTable table = table(head("group", DataType.STRING, null), head("amount", DataType.INTEGER, Aggregation.SUM),
+                head("price", DataType.DOUBLE, null));
+        table.getFooter().setGrandTotal(false);
+        table.getFooter().setSubtotalLabel("sub");
+
+        assertEquals("5:0=a|1=1.0|2=2.5|\n"
+                + "6:0=a|1=2.0|2=4.0|\n"
+                + "7:0=sub|1=3.0|\n"
+                + "8:0=b|1=3.0|2=1.5|\n"
+                + "9:0=sub|1=3.0|\n", body(table));
+    }
+}
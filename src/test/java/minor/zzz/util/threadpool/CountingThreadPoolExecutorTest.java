@@ -0,0 +1,275 @@
+package minor.zzz.util.threadpool;
+
+import minor.zzz.util.threadpool.CountingThreadPoolExecutor.InFlightPolicy;
+import minor.zzz.util.threadpool.support.CountLatch;
+import minor.zzz.util.threadpool.support.StripedCountLatch;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CountingThreadPoolExecutorTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private CountingThreadPoolExecutor executor;
+
+    @After
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private CountingThreadPoolExecutor newExecutor(int threads, CountLatch count, int maxInFlight, InFlightPolicy policy) {
+        executor = new CountingThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), count, maxInFlight, policy);
+        return executor;
+    }
+
+    private static List<Runnable> counters(final AtomicInteger counter, int n) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    counter.incrementAndGet();
+                }
+            });
+        }
+        return tasks;
+    }
+
+    @Test
+    public void executeAllRunsEveryTask() throws Exception {
+        CountLatch count = new StripedCountLatch();
+        newExecutor(4, count, 0, null);
+
+        AtomicInteger counter = new AtomicInteger();
+        executor.executeAll(counters(counter, 1000));
+
+        assertReachesZero(count);
+        assertEquals(1000, counter.get());
+    }
+
+    // 计数在超时之前变为0并唤醒等待线程; 超时后AQS会再检查一次计数, 只看返回值发现不了没有唤醒的情况
+    static void assertReachesZero(CountLatch count) throws InterruptedException {
+        long begin = System.nanoTime();
+        boolean zero = count.awaitZero(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - begin;
+
+        assertTrue("count is " + count.getCount(), zero);
+        assertTrue("waiter was not signalled", elapsed < TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS));
+    }
+
+    // 在gate打开之前阻塞的任务
+    private static List<Runnable> gated(final AtomicInteger counter, final CountDownLatch gate, int n) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    counter.incrementAndGet();
+                }
+            });
+        }
+        return tasks;
+    }
+
+    // 稍后在另一个线程中打开gate, 使等待线程先进入等待
+    private static void openLater(final CountDownLatch gate) {
+        Thread opener = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignore) {
+                }
+                gate.countDown();
+            }
+        });
+        opener.setDaemon(true);
+        opener.start();
+    }
+
+    // 限制maxInFlight时批处理任务逐个execute, 增减计数须使用同一个key, 否则StripedCountLatch不会唤醒等待线程
+    @Test
+    public void boundedExecuteAllReachesZeroWithStripedCount() throws Exception {
+        CountLatch count = new StripedCountLatch(64);
+        newExecutor(4, count, 1000, InFlightPolicy.BLOCK);
+
+        AtomicInteger counter = new AtomicInteger();
+        CountDownLatch gate = new CountDownLatch(1);
+        executor.executeAll(gated(counter, gate, 400));
+        openLater(gate);
+
+        assertReachesZero(count);
+        assertEquals(400, counter.get());
+        assertEquals(0, count.getCount());
+    }
+
+    // 阻塞到gate打开的任务, started在任务开始执行时计数
+    private static Runnable blocker(final CountDownLatch started, final CountDownLatch gate) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private static final Runnable NOOP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    // 任务入队之后关闭线程池, super.execute的二次检查会先remove再拒绝同一个任务
+    @SuppressWarnings("serial")
+    private static final class ShutdownOnOffer extends LinkedBlockingQueue<Runnable> {
+        private volatile CountingThreadPoolExecutor executor;
+
+        @Override
+        public boolean offer(Runnable r) {
+            boolean offered = super.offer(r);
+            if (executor != null) {
+                executor.shutdown();
+            }
+            return offered;
+        }
+    }
+
+    @Test
+    public void shutdownRecheckDecrementsOnce() throws Exception {
+        CountLatch count = new CountLatch(0);
+        ShutdownOnOffer queue = new ShutdownOnOffer();
+        executor = new CountingThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, queue, count, 2, InFlightPolicy.BLOCK);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        executor.execute(blocker(started, gate));
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        queue.executor = executor;
+        executor.execute(NOOP);
+
+        assertEquals(1, count.getCount());
+
+        gate.countDown();
+        assertReachesZero(count);
+        assertEquals(0, count.getCount());
+        assertTrue(executor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void removeAndPurgeDecrementQueuedTasks() throws Exception {
+        CountLatch count = new CountLatch(0);
+        newExecutor(1, count, 0, null);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        executor.execute(blocker(started, gate));
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        Runnable removable = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        executor.execute(removable);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(NOOP));
+        }
+        assertEquals(6, count.getCount());
+
+        assertTrue(executor.remove(removable));
+        assertEquals(5, count.getCount());
+        assertTrue(!executor.remove(removable));
+        assertEquals(5, count.getCount());
+
+        futures.get(0).cancel(false);
+        futures.get(2).cancel(false);
+        executor.purge();
+        assertEquals(3, count.getCount());
+        executor.purge();
+        assertEquals(3, count.getCount());
+
+        gate.countDown();
+        assertReachesZero(count);
+    }
+
+    @Test
+    public void blockPolicyWaitsForInFlightTasks() throws Exception {
+        CountLatch count = new CountLatch(0);
+        newExecutor(1, count, 2, InFlightPolicy.BLOCK);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        executor.execute(blocker(started, gate));
+        executor.execute(NOOP);
+
+        final CountDownLatch submitted = new CountDownLatch(1);
+        Thread submitter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(NOOP);
+                submitted.countDown();
+            }
+        });
+        submitter.start();
+
+        assertTrue(!submitted.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(2, count.getCount());
+
+        gate.countDown();
+        assertTrue(submitted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        submitter.join();
+        assertReachesZero(count);
+    }
+
+    @Test
+    public void callerRunsPolicyRunsInSubmittingThread() throws Exception {
+        CountLatch count = new CountLatch(0);
+        newExecutor(1, count, 1, InFlightPolicy.CALLER_RUNS);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        executor.execute(blocker(started, gate));
+
+        final Thread[] ranIn = new Thread[1];
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ranIn[0] = Thread.currentThread();
+            }
+        });
+
+        assertEquals(Thread.currentThread(), ranIn[0]);
+        assertEquals(1, count.getCount());
+
+        gate.countDown();
+        assertReachesZero(count);
+    }
+}
@@ -0,0 +1,173 @@
+package minor.zzz.util.threadpool;
+
+import minor.zzz.util.threadpool.support.CountLatch;
+import minor.zzz.util.threadpool.support.StripedCountLatch;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ForkJoinCountingExecutorTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private ForkJoinCountingExecutor executor;
+
+    @After
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNullCount() {
+        new ForkJoinCountingExecutor(2, null);
+    }
+
+    // 深度小于depth时各提交两个子任务, 子任务在工作线程中提交; inPool统计在工作线程中执行的任务
+    private Runnable spawn(final int depth, final int maxDepth, final AtomicInteger executed, final AtomicInteger inPool) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                executed.incrementAndGet();
+                if (ForkJoinTask.inForkJoinPool()) {
+                    inPool.incrementAndGet();
+                }
+                if (depth < maxDepth) {
+                    for (int i = 0; i < 2; i++) {
+                        executor.execute(spawn(depth + 1, maxDepth, executed, inPool));
+                    }
+                }
+            }
+        };
+    }
+
+    @Test
+    public void awaitCompletionWaitsForRecursivelySpawnedTasks() throws Exception {
+        CountLatch count = new StripedCountLatch();
+        executor = new ForkJoinCountingExecutor(4, count);
+
+        AtomicInteger executed = new AtomicInteger();
+        AtomicInteger inPool = new AtomicInteger();
+        executor.execute(spawn(0, 10, executed, inPool));
+
+        CountingThreadPoolExecutorTest.assertReachesZero(count);
+        assertEquals(2047, executed.get());
+        assertEquals(2047, inPool.get());
+    }
+
+    @Test
+    public void countIncludesQueuedAndRunningTasks() throws Exception {
+        CountLatch count = new CountLatch(0);
+        executor = new ForkJoinCountingExecutor(1, count);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+        }
+
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(4, count.getCount());
+        assertFalse(count.awaitZero(50, TimeUnit.MILLISECONDS));
+
+        gate.countDown();
+        executor.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(0, count.getCount());
+    }
+
+    // 任务抛出的异常交给线程的UncaughtExceptionHandler, 计数仍减少
+    @Test
+    public void failedTaskIsUncounted() throws Exception {
+        CountLatch count = new CountLatch(0);
+        executor = new ForkJoinCountingExecutor(2, count);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Thread.currentThread().setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                    @Override
+                    public void uncaughtException(Thread t, Throwable e) {
+                    }
+                });
+                throw new IllegalStateException("failed");
+            }
+        });
+
+        CountingThreadPoolExecutorTest.assertReachesZero(count);
+    }
+
+    @Test
+    public void rejectedTaskIsNotCounted() throws Exception {
+        CountLatch count = new CountLatch(0);
+        executor = new ForkJoinCountingExecutor(1, count);
+        executor.shutdown();
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail("task accepted after shutdown");
+        } catch (RejectedExecutionException expected) {
+        }
+
+        assertEquals(0, count.getCount());
+        assertTrue(executor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void awaitShutdownRunsEveryTaskThenTerminates() throws Exception {
+        executor = new ForkJoinCountingExecutor(2);
+
+        AtomicInteger executed = new AtomicInteger();
+        AtomicInteger inPool = new AtomicInteger();
+        executor.execute(spawn(0, 6, executed, inPool));
+
+        executor.awaitShutdown();
+
+        assertEquals(127, executed.get());
+        assertTrue(executor.isShutdown());
+        assertTrue(executor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void groupCountsTasksSpawnedByItsTasks() throws Exception {
+        executor = new ForkJoinCountingExecutor(2);
+        TaskGroup group = new TaskGroup("job");
+
+        AtomicInteger executed = new AtomicInteger();
+        AtomicInteger inPool = new AtomicInteger();
+        executor.execute(spawn(0, 5, executed, inPool), group);
+
+        executor.awaitCompletion(group, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(0, group.getCount());
+        assertEquals(63, executed.get());
+    }
+}
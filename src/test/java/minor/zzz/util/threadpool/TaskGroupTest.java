@@ -0,0 +1,232 @@
+package minor.zzz.util.threadpool;
+
+import minor.zzz.util.threadpool.CountingThreadPoolExecutor.InFlightPolicy;
+import minor.zzz.util.threadpool.support.CountLatch;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TaskGroupTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private CountingExecutor executor;
+
+    @After
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private CountingExecutor newExecutor() {
+        executor = new CountingThreadPoolExecutor(4, 4, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        return executor;
+    }
+
+    // 深度小于depth时各提交两个子任务, 子任务不指定组
+    private Runnable spawn(final int depth, final AtomicInteger executed, final CountDownLatch gate) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                executed.incrementAndGet();
+                if (depth > 0) {
+                    executor.execute(spawn(depth - 1, executed, gate));
+                    executor.execute(spawn(depth - 1, executed, gate));
+                }
+            }
+        };
+    }
+
+    @Test
+    public void recursiveTasksBelongToTheGroupOfTheRootTask() throws Exception {
+        newExecutor();
+        TaskGroup group = new TaskGroup("crawl");
+        AtomicInteger executed = new AtomicInteger();
+        CountDownLatch gate = new CountDownLatch(1);
+
+        executor.execute(spawn(5, executed, gate), group);
+        CompletableFuture<Void> quiescence = group.onQuiescence();
+        assertTrue(!quiescence.isDone());
+
+        gate.countDown();
+        quiescence.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertEquals(63, executed.get());
+        assertEquals(0, group.getCount());
+    }
+
+    @Test
+    public void groupsOfConcurrentJobsCompleteIndependently() throws Exception {
+        newExecutor();
+        TaskGroup fast = new TaskGroup("fast");
+        TaskGroup slow = new TaskGroup("slow");
+        CountDownLatch fastGate = new CountDownLatch(1);
+        CountDownLatch slowGate = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+
+        executor.execute(spawn(3, executed, slowGate), slow);
+        executor.execute(spawn(3, executed, fastGate), fast);
+
+        fastGate.countDown();
+        fast.onQuiescence().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(0, fast.getCount());
+        assertTrue(slow.getCount() > 0);
+        assertTrue(!slow.onQuiescence().isDone());
+
+        slowGate.countDown();
+        executor.awaitCompletion(slow, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(0, slow.getCount());
+        assertEquals(30, executed.get());
+    }
+
+    @Test
+    public void childTasksCountInParent() throws Exception {
+        newExecutor();
+        TaskGroup parent = new TaskGroup("report");
+        TaskGroup child = parent.newChild("sheet");
+        assertSame(parent, child.getParent());
+
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+        executor.execute(spawn(0, executed, gate), child);
+        assertEquals(1, child.getCount());
+        assertEquals(1, parent.getCount());
+
+        CompletableFuture<Void> parentQuiescence = parent.onQuiescence();
+        gate.countDown();
+        parentQuiescence.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(0, child.getCount());
+    }
+
+    @Test
+    public void quiescenceOfIdleGroupIsAlreadyComplete() {
+        assertTrue(new TaskGroup("idle").onQuiescence().isDone());
+    }
+
+    @Test
+    public void currentGroupIsSetOnlyWhileRunningGroupTask() throws Exception {
+        newExecutor();
+        final TaskGroup group = new TaskGroup("job");
+        final TaskGroup[] seen = new TaskGroup[1];
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                seen[0] = TaskGroup.current();
+            }
+        }, group);
+        executor.awaitCompletion(group, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertSame(group, seen[0]);
+        assertNull(TaskGroup.current());
+    }
+
+    @Test
+    public void rejectedTaskLeavesTheGroup() throws Exception {
+        newExecutor().shutdown();
+        TaskGroup group = new TaskGroup("job");
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }, group);
+            fail("task accepted after shutdown");
+        } catch (RejectedExecutionException expected) {
+        }
+
+        assertEquals(0, group.getCount());
+        assertTrue(group.onQuiescence().isDone());
+    }
+
+    // 达到maxInFlight时在提交线程中直接执行的任务同样计入组, 子任务结束时组不会提前为0
+    @Test
+    public void callerRunsTaskEntersTheGroup() throws Exception {
+        final CountLatch count = new CountLatch(0);
+        final CountingThreadPoolExecutor pool = new CountingThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), count, 1, InFlightPolicy.CALLER_RUNS);
+        executor = pool;
+
+        final CountDownLatch gate = new CountDownLatch(1);
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        final TaskGroup group = new TaskGroup("inline");
+        final long[] counts = new long[3];
+        final boolean[] quiescentBeforeEnd = new boolean[1];
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                counts[0] = group.getCount();
+                counts[1] = count.getCount();
+                CompletableFuture<Void> quiescence = group.onQuiescence();
+
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        counts[2] = group.getCount();
+                    }
+                });
+                quiescentBeforeEnd[0] = quiescence.isDone();
+            }
+        }, group);
+
+        assertEquals(1, counts[0]);
+        assertEquals(2, counts[1]);
+        assertEquals(2, counts[2]);
+        assertTrue(!quiescentBeforeEnd[0]);
+        assertEquals(0, group.getCount());
+        assertEquals(1, count.getCount());
+
+        gate.countDown();
+        pool.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(0, count.getCount());
+    }
+
+    @Test
+    public void forkJoinExecutorCountsGroupTasks() throws Exception {
+        executor = new ForkJoinCountingExecutor(4);
+        TaskGroup group = new TaskGroup("fork-join");
+        AtomicInteger executed = new AtomicInteger();
+        CountDownLatch gate = new CountDownLatch(1);
+
+        executor.execute(spawn(4, executed, gate), group);
+        CompletableFuture<Void> quiescence = group.onQuiescence();
+
+        gate.countDown();
+        quiescence.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(31, executed.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNullName() {
+        new TaskGroup(null);
+    }
+}
@@ -0,0 +1,164 @@
+package minor.zzz.util.threadpool;
+
+import minor.zzz.util.threadpool.support.CountLatch;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TaskMetricsTest {
+
+    private CountingThreadPoolExecutor executor;
+    private final CountLatch count = new CountLatch(0);
+
+    @After
+    public void shutdown() {
+        if (executor != null) {
+            executor.getMetrics().unregister();
+            executor.shutdownNow();
+        }
+    }
+
+    private CountingThreadPoolExecutor newExecutor() {
+        executor = new CountingThreadPoolExecutor(2, 2, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), count);
+
+        // 失败的任务不打印异常
+        final ThreadFactory threads = Executors.defaultThreadFactory();
+        executor.setThreadFactory(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = threads.newThread(r);
+                thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                    @Override
+                    public void uncaughtException(Thread t, Throwable e) {
+                    }
+                });
+                return thread;
+            }
+        });
+        return executor;
+    }
+
+    private void runTasks(int succeeding, int failing, final long sleepMillis) throws InterruptedException {
+        for (int i = 0; i < succeeding; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(sleepMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < failing; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    throw new IllegalStateException("failed");
+                }
+            });
+        }
+
+        CountingThreadPoolExecutorTest.assertReachesZero(count);
+    }
+
+    @Test
+    public void disabledMetricsRecordNothing() throws Exception {
+        newExecutor();
+        runTasks(5, 0, 0);
+
+        TaskMetricsSnapshot snapshot = executor.getMetrics().snapshot();
+        assertEquals(0, snapshot.getSubmitted());
+        assertEquals(0, snapshot.getCompleted());
+        assertEquals(0, snapshot.getRunTime().getCount());
+    }
+
+    @Test
+    public void countsSubmittedCompletedFailedAndRejectedTasks() throws Exception {
+        newExecutor().getMetrics().setEnabled(true);
+        runTasks(6, 2, 20);
+
+        executor.shutdown();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail("task should be rejected after shutdown");
+        } catch (RejectedExecutionException expected) {
+            // 计入拒绝数
+        }
+
+        TaskMetricsSnapshot snapshot = executor.getMetrics().snapshot();
+        assertEquals(9, snapshot.getSubmitted());
+        assertEquals(8, snapshot.getCompleted());
+        assertEquals(2, snapshot.getFailed());
+        assertEquals(1, snapshot.getRejected());
+        assertEquals(0, snapshot.getInFlight());
+
+        assertEquals(8, snapshot.getRunTime().getCount());
+        assertEquals(8, snapshot.getQueueWait().getCount());
+        assertTrue(snapshot.getRunTime().getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(snapshot.getRunTime().getPercentileNanos(99) >= snapshot.getRunTime().getPercentileNanos(50));
+        assertTrue(snapshot.getThroughput() > 0);
+
+        executor.getMetrics().reset();
+        snapshot = executor.getMetrics().snapshot();
+        assertEquals(0, snapshot.getSubmitted());
+        assertEquals(0, snapshot.getRejected());
+        assertEquals(0, snapshot.getRunTime().getCount());
+    }
+
+    @Test
+    public void attributesAreReadableThroughJmx() throws Exception {
+        newExecutor().getMetrics().register("TaskMetricsTest");
+        ObjectName name = new ObjectName(TaskMetrics.DOMAIN + ":type=CountingExecutor,name=" + ObjectName.quote("TaskMetricsTest"));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertTrue(server.isRegistered(name));
+
+        assertEquals(false, server.getAttribute(name, "Enabled"));
+        server.setAttribute(name, new Attribute("Enabled", true));
+        assertTrue(executor.getMetrics().isEnabled());
+
+        runTasks(3, 1, 10);
+
+        assertEquals(4L, server.getAttribute(name, "Submitted"));
+        assertEquals(4L, server.getAttribute(name, "Completed"));
+        assertEquals(1L, server.getAttribute(name, "Failed"));
+        assertEquals(0L, server.getAttribute(name, "InFlight"));
+        assertEquals(0, server.getAttribute(name, "QueueSize"));
+        long max = (Long) server.getAttribute(name, "RunTimeMaxMicros");
+        assertTrue(max >= TimeUnit.MILLISECONDS.toMicros(10));
+        assertTrue(max >= (Long) server.getAttribute(name, "RunTimeP99Micros"));
+        assertTrue(((String) server.getAttribute(name, "Snapshot")).contains("completed=4"));
+
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, server.getAttribute(name, "Completed"));
+
+        executor.getMetrics().unregister();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void registeringTwiceFails() {
+        TaskMetrics metrics = newExecutor().getMetrics();
+        metrics.register("TaskMetricsTest-twice");
+        metrics.register("TaskMetricsTest-again");
+    }
+}
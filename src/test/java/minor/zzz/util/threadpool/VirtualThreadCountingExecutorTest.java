@@ -0,0 +1,144 @@
+package minor.zzz.util.threadpool;
+
+import minor.zzz.util.threadpool.support.CountLatch;
+import minor.zzz.util.threadpool.support.VirtualThreads;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Java 21以下测试平台线程的退化实现, Java 21上测试虚拟线程
+ */
+public class VirtualThreadCountingExecutorTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private VirtualThreadCountingExecutor executor;
+
+    @After
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveConcurrency() {
+        new VirtualThreadCountingExecutor(0);
+    }
+
+    @Test
+    public void usesVirtualThreadsOnlyWhenSupported() {
+        executor = new VirtualThreadCountingExecutor(2);
+        assertEquals(VirtualThreads.isSupported(), executor.isVirtual());
+        assertEquals(2, executor.getMaxConcurrency());
+    }
+
+    @Test
+    public void runningTasksNeverExceedMaxConcurrency() throws Exception {
+        final int limit = 3;
+        CountLatch count = new CountLatch(0);
+        executor = new VirtualThreadCountingExecutor(limit, count);
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        for (int i = 0; i < 50; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int now = running.incrementAndGet();
+                    peak.accumulateAndGet(now, Math::max);
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                }
+            });
+        }
+
+        assertTrue(count.awaitZero(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue("peak " + peak.get(), peak.get() <= limit);
+        assertTrue(peak.get() > 0);
+    }
+
+    // 许可在任务开始时获取, 只有一个许可时任务中提交子任务也不会死锁
+    @Test
+    public void recursiveTasksCompleteWithSinglePermit() throws Exception {
+        CountLatch count = new CountLatch(0);
+        executor = new VirtualThreadCountingExecutor(1, count);
+
+        final AtomicInteger executed = new AtomicInteger();
+        executor.execute(spawn(0, executed));
+
+        executor.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(0, count.getCount());
+        assertEquals(63, executed.get());
+    }
+
+    // 深度小于5时各提交两个子任务, 共63个任务
+    private Runnable spawn(final int depth, final AtomicInteger executed) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                executed.incrementAndGet();
+                if (depth < 5) {
+                    for (int i = 0; i < 2; i++) {
+                        executor.execute(spawn(depth + 1, executed));
+                    }
+                }
+            }
+        };
+    }
+
+    @Test
+    public void rejectedTaskIsNotCounted() throws Exception {
+        CountLatch count = new CountLatch(0);
+        executor = new VirtualThreadCountingExecutor(1, count);
+        executor.shutdown();
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail("task accepted after shutdown");
+        } catch (RejectedExecutionException expected) {
+        }
+
+        assertEquals(0, count.getCount());
+    }
+
+    @Test
+    public void groupCountsTasksOfTheGroup() throws Exception {
+        executor = new VirtualThreadCountingExecutor(2);
+        TaskGroup group = new TaskGroup("job");
+
+        final CountDownLatch gate = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, group);
+        assertEquals(1, group.getCount());
+
+        gate.countDown();
+        executor.awaitCompletion(group, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(0, group.getCount());
+    }
+}
@@ -0,0 +1,108 @@
+package minor.zzz.util.threadpool.support;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesHaveTheirOwnBuckets() {
+        for (int nanos = 0; nanos < 8; nanos++) {
+            assertEquals(nanos, LatencyHistogram.bucket(nanos));
+            assertEquals(nanos, LatencyHistogram.upperBound(nanos));
+        }
+
+        // 8到15仍每个值一个桶, 之后每组的桶宽加倍
+        assertEquals(8, LatencyHistogram.bucket(8));
+        assertEquals(15, LatencyHistogram.bucket(15));
+        assertEquals(16, LatencyHistogram.bucket(16));
+        assertEquals(16, LatencyHistogram.bucket(17));
+        assertEquals(17, LatencyHistogram.bucket(18));
+        assertEquals(17, LatencyHistogram.upperBound(16));
+    }
+
+    @Test
+    public void bucketsAreContiguousWithinTheRelativeError() {
+        int previous = -1;
+        for (long nanos = 0; nanos < (1L << 20); nanos++) {
+            int bucket = LatencyHistogram.bucket(nanos);
+            long upper = LatencyHistogram.upperBound(bucket);
+
+            assertTrue(bucket == previous || bucket == previous + 1);
+            assertTrue(nanos + " > " + upper, nanos <= upper);
+            assertTrue(nanos + " -> " + upper, upper - nanos <= nanos / 8);
+            if (bucket > 0) {
+                assertTrue(nanos > LatencyHistogram.upperBound(bucket - 1));
+            }
+            previous = bucket;
+        }
+    }
+
+    @Test
+    public void largeValuesShareTheLastBucket() {
+        int last = LatencyHistogram.bucket((1L << 41) - 1);
+
+        assertEquals(last - 7, LatencyHistogram.bucket(1L << 40));
+        assertEquals(last, LatencyHistogram.bucket(1L << 41));
+        assertEquals(last, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesAreBucketUpperBoundsCappedByMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int nanos = 1; nanos <= 100; nanos++) {
+            histogram.record(nanos);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(50, snapshot.getMeanNanos());
+        assertEquals(100, snapshot.getMaxNanos());
+
+        assertEquals(1, snapshot.getPercentileNanos(0));
+        assertEquals(51, snapshot.getPercentileNanos(50));         // 50所在的桶为48..51
+        assertEquals(100, snapshot.getPercentileNanos(99));        // 99所在的桶为96..103, 不超过最大值
+        assertEquals(100, snapshot.getPercentileNanos(100));
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1, snapshot.getCount());
+        assertEquals(0, snapshot.getPercentileNanos(100));
+        assertEquals(0, snapshot.getMaxNanos());
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        LatencyHistogram.Snapshot before = histogram.snapshot();
+
+        histogram.reset();
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMeanNanos());
+        assertEquals(0, snapshot.getMaxNanos());
+        assertEquals(0, snapshot.getPercentileNanos(99));
+
+        // 之前的快照不受影响
+        assertEquals(1, before.getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPercentileAbove100() {
+        new LatencyHistogram().snapshot().getPercentileNanos(100.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativePercentile() {
+        new LatencyHistogram().snapshot().getPercentileNanos(-1);
+    }
+}
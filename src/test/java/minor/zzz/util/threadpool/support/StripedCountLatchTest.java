@@ -0,0 +1,121 @@
+package minor.zzz.util.threadpool.support;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StripedCountLatchTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveStripes() {
+        new StripedCountLatch(0);
+    }
+
+    @Test
+    public void countsKeyedAndUnkeyedChanges() {
+        StripedCountLatch count = new StripedCountLatch(4);
+        Object first = new Object();
+        Object second = new Object();
+
+        count.increment(first);
+        count.add(second, 3);
+        count.increment();
+        assertEquals(5, count.getCount());
+
+        count.decrement(first);
+        count.decrement(second);
+        count.decrement();
+        assertEquals(2, count.getCount());
+    }
+
+    @Test
+    public void awaitZeroReturnsImmediatelyWhenZero() throws Exception {
+        StripedCountLatch count = new StripedCountLatch();
+        assertTrue(count.awaitZero(0, TimeUnit.SECONDS));
+
+        count.increment();
+        assertTrue(!count.awaitZero(10, TimeUnit.MILLISECONDS));
+    }
+
+    // 等待线程先进入等待, 计数在其他线程中的另一个分段减为0时须被唤醒
+    @Test
+    public void wakesWaiterWhenLastKeyedDecrementHappensElsewhere() throws Exception {
+        final StripedCountLatch count = new StripedCountLatch(64);
+        final List<Object> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Object key = new Object();
+            keys.add(key);
+            count.increment(key);
+        }
+
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final CountDownLatch woken = new CountDownLatch(1);
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                waiting.countDown();
+                try {
+                    count.awaitZero();
+                    woken.countDown();
+                } catch (InterruptedException ignore) {
+                }
+            }
+        });
+        waiter.start();
+
+        assertTrue(waiting.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Thread.sleep(50);
+
+        for (Object key : keys) {
+            count.decrement(key);
+        }
+
+        assertTrue(woken.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        waiter.join();
+        assertEquals(0, count.getCount());
+    }
+
+    // 多个线程递归增减计数, 每个线程各自成对调用, 结束时计数为0且等待线程被唤醒
+    @Test
+    public void concurrentIncrementsAndDecrementsBalance() throws Exception {
+        final StripedCountLatch count = new StripedCountLatch();
+        final int threads = 8;
+        final int rounds = 100000;
+
+        count.increment();          // 防止工作线程启动前计数为0
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < rounds; i++) {
+                        Object key = new Object();
+                        count.increment(key);
+                        count.increment();
+                        count.decrement();
+                        count.decrement(key);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        count.decrement();
+        assertTrue(count.awaitZero(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, count.getCount());
+    }
+}